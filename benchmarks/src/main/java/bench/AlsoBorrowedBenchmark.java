@@ -0,0 +1,83 @@
+package bench;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import service.AlsoBorrowed;
+
+/**
+ * Top-K lookups and incremental updates on the co-borrow matrix. The matrix is filled with
+ * synthetic borrows: {@code readers} readers with 20 titles each, drawn with a skew towards
+ * low ISBN numbers so popular titles have long co-borrow lists, like a real catalogue.
+ * The engine runs on a FakeMongo database with an empty log, so nothing is loaded or saved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlsoBorrowedBenchmark {
+
+    private static final int TITLES = 20_000;
+    private static final int PER_READER = 20;
+
+    @Param({"10000", "100000"})
+    public int readers;
+
+    private AlsoBorrowed engine;
+    private final Random random = new Random(7);
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        engine = AlsoBorrowed.of(FakeMongo.database("AlsoBorrowed-" + readers, Set.of("transactions")));
+        while (!engine.isReady()) Thread.sleep(10);
+        Instant now = Instant.now();
+        for (int r = 0; r < readers; r++) {
+            for (int i = 0; i < PER_READER; i++) engine.recordBorrow("reader-" + r, isbn(skewed()), null, now);
+        }
+    }
+
+    // squaring a uniform draw puts most borrows on the first few hundred titles
+    private int skewed() {
+        double u = random.nextDouble();
+        return (int) (u * u * TITLES);
+    }
+
+    private static String isbn(int i) {
+        return "978-" + i;
+    }
+
+    @Benchmark
+    public List<AlsoBorrowed.Recommendation> top10Popular() {
+        return engine.recommend(isbn(0), 10);
+    }
+
+    @Benchmark
+    public List<AlsoBorrowed.Recommendation> top10Typical() {
+        return engine.recommend(isbn(TITLES / 2), 10);
+    }
+
+    @Benchmark
+    public void recordBorrow() {
+        // an existing reader borrows one more title, so histories grow slowly over the run
+        engine.recordBorrow("reader-" + (next++ % readers), isbn(skewed()), null, Instant.now());
+    }
+}
@@ -0,0 +1,303 @@
+package bench;
+
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Updates.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import service.BorrowStats;
+import service.LibraryManagementSystem;
+import service.MongoClientRegistry;
+import service.TitleResolver;
+import service.TransactionHistory;
+import service.TransactionLog;
+
+/**
+ * Double-borrow stress test: the borrow/return path as it was before it became a single
+ * findOneAndUpdate, against the current one.
+ *
+ * Each path gets its own --books single-copy titles (one document per copy, status and
+ * borrowedBy) and --readers virtual-thread readers. A reader picks a random title and returns
+ * it if it holds it, borrows it otherwise, so every title is fought over all the time. A
+ * successful borrow of a title another reader already holds is a double borrow; at the end
+ * every document must say Borrowed by exactly the reader the harness thinks holds it.
+ * Latencies after --warmup go into one HdrHistogram per path and operation.
+ *
+ * Usage: BorrowRace [--uri URI] [--db DB] [--readers N] [--books N] [--seconds N] [--warmup N]
+ *                   [--report FILE] [--fake] [--rtt MICROS]
+ * The old path runs against DB-old, the current one against DB-atomic. The transaction log
+ * runs FIRE_AND_FORGET unless -Dlibrary.txlog.durability says otherwise, as in HotTitle.
+ * --fake runs against FakeMongo with --rtt microseconds per server call (default 500); it
+ * shows the race and the round-trip difference, not server behaviour. The exit code is 1 when
+ * the current path double-borrowed; the old path is expected to.
+ */
+public class BorrowRace {
+
+    private static final String TITLE_PREFIX = "Race Book ";
+    private static final String USER_PREFIX = "race-reader-";
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    interface Checkout {
+        boolean borrow(String title, String username);
+        boolean returnBook(String title, String username);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String uri = "mongodb://localhost:27017", dbName = "LibraryBorrowRace", report = "borrow-race-report.json";
+        int readers = 64, books = 16, seconds = 10, warmup = 2;
+        long rtt = 500;
+        boolean fake = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--uri": uri = args[++i]; break;
+                case "--db": dbName = args[++i]; break;
+                case "--readers": readers = Integer.parseInt(args[++i]); break;
+                case "--books": books = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--report": report = args[++i]; break;
+                case "--fake": fake = true; break;
+                case "--rtt": rtt = Long.parseLong(args[++i]); break;
+                default: System.out.println("Unknown option " + args[i]); return;
+            }
+        }
+        if (System.getProperty("library.txlog.durability") == null) {
+            System.setProperty("library.txlog.durability", TransactionLog.Durability.FIRE_AND_FORGET.name());
+        }
+
+        System.out.printf("[race] %d readers on %d single-copy titles, %ds warmup + %ds per path%s%n", readers, books, warmup, seconds,
+                fake ? ", fake server with " + rtt + "us round trips" : "");
+        System.out.printf("%-7s %-7s %9s %8s %8s %8s %8s %8s %8s%n", "path", "op", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "doubles");
+        Map<String, Object> paths = new LinkedHashMap<>();
+        long atomicDoubles = 0;
+        try {
+            for (String name : List.of("old", "atomic")) {
+                String pathDb = dbName + "-" + name;
+                MongoClientRegistry.Lease lease = fake ? null : MongoClientRegistry.acquire(uri, pathDb);
+                try {
+                    MongoDatabase db = fake ? FakeMongo.database(pathDb, Set.of(BorrowStats.COLLECTION), rtt) : lease.getDatabase();
+                    Document result = new BorrowRace(db, name, readers, books).run(warmup, seconds, !fake);
+                    paths.put(name, result);
+                    if (name.equals("atomic")) atomicDoubles = result.getLong("doubleBorrows") + result.getList("violations", String.class).size();
+                } finally {
+                    TransactionLog.shutdownAll();
+                    BorrowStats.shutdownAll();
+                    if (lease != null) MongoClientRegistry.release(lease);
+                }
+            }
+        } finally {
+            MongoClientRegistry.shutdown();
+        }
+        Document result = new Document("finishedAt", Instant.now().toString())
+                .append("target", fake ? "fake, " + rtt + "us round trips" : uri + "/" + dbName)
+                .append("durability", System.getProperty("library.txlog.durability"))
+                .append("readers", readers)
+                .append("books", books)
+                .append("seconds", seconds)
+                .append("paths", new Document(paths));
+        Files.writeString(Path.of(report), result.toJson(JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).indent(true).build()));
+        System.out.println("[race] report written to " + report);
+        if (atomicDoubles > 0) System.exit(1);
+    }
+
+    private final MongoCollection<Document> products;
+    private final MongoCollection<Document> transactions;
+    private final TransactionHistory history;
+    private final MongoDatabase db;
+    private final String name;
+    private Checkout path;
+    private final int readers;
+    private final int books;
+    private final Histogram borrowLatency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final Histogram returnLatency = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+    private final AtomicLong borrows = new AtomicLong(), returns = new AtomicLong();
+    private final AtomicLong doubleBorrows = new AtomicLong(), lostReturns = new AtomicLong();
+    // title -> reader the harness believes holds it
+    private final Map<String, String> holder = new ConcurrentHashMap<>();
+    private final List<String> violations = new ArrayList<>();
+
+    BorrowRace(MongoDatabase db, String name, int readers, int books) {
+        this.products = db.getCollection("products");
+        this.transactions = db.getCollection(TransactionHistory.COLLECTION);
+        this.history = TransactionHistory.of(db);
+        this.db = db;
+        this.name = name;
+        this.readers = readers;
+        this.books = books;
+    }
+
+    // after seeding, so the current path starts with its title index loaded
+    private Checkout checkout() {
+        if (name.equals("old")) return new OldPath(products, transactions);
+        TitleResolver.forCollection(products).build(products);
+        LibraryManagementSystem lms = new LibraryManagementSystem(db);
+        return new Checkout() {
+            public boolean borrow(String title, String username) { return lms.borrowBook(title, username); }
+            public boolean returnBook(String title, String username) { return lms.returnBook(title, username); }
+        };
+    }
+
+    static String title(int i) {
+        return String.format("%s%04d", TITLE_PREFIX, i);
+    }
+
+    Document run(int warmupSeconds, int seconds, boolean cleanUp) throws InterruptedException {
+        if (cleanUp) {
+            products.deleteMany(eq("borrowRace", true));
+            transactions.deleteMany(regex(history.usernameField(), "^" + USER_PREFIX));
+        }
+        String now = Instant.now().toString();
+        List<Document> docs = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            docs.add(new Document("name", title(i)).append("isbn", "race-" + i).append("category", "Race")
+                    .append("status", "Available").append("borrowRace", true)
+                    .append("createdDate", now).append("lastUpdated", now));
+        }
+        products.insertMany(docs);
+        path = checkout();
+
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < readers; i++) {
+                String username = USER_PREFIX + i;
+                pool.submit(() -> reader(username, measureFrom, end));
+            }
+        }
+        checkFinalState();
+
+        Document out = new Document("borrows", borrows.get())
+                .append("returns", returns.get())
+                .append("doubleBorrows", doubleBorrows.get())
+                .append("lostReturns", lostReturns.get())
+                .append("borrow", percentiles(borrowLatency))
+                .append("return", percentiles(returnLatency))
+                .append("violations", new ArrayList<>(violations));
+        print("borrow", borrowLatency, doubleBorrows.get());
+        print("return", returnLatency, doubleBorrows.get());
+        return out;
+    }
+
+    private void reader(String username, long measureFrom, long end) {
+        Set<String> mine = new HashSet<>();
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            String title = title(rnd.nextInt(books));
+            long t0 = System.nanoTime();
+            if (mine.remove(title)) {
+                holder.remove(title, username);
+                boolean ok = path.returnBook(title, username);
+                record(returnLatency, t0, measureFrom);
+                // a reader whose borrow was overwritten by a racing one no longer holds the copy
+                if (ok) returns.incrementAndGet(); else lostReturns.incrementAndGet();
+            } else {
+                boolean ok = path.borrow(title, username);
+                record(borrowLatency, t0, measureFrom);
+                if (!ok) continue;
+                borrows.incrementAndGet();
+                mine.add(title);
+                String previous = holder.put(title, username);
+                if (previous != null) doubleBorrows.incrementAndGet();
+            }
+        }
+    }
+
+    private static void record(Histogram h, long t0, long measureFrom) {
+        long t1 = System.nanoTime();
+        if (t0 >= measureFrom) h.recordValue(Math.min(MAX_LATENCY_MICROS, (t1 - t0) / 1000));
+    }
+
+    private void checkFinalState() {
+        TransactionLog.flushAll();
+        for (Document d : products.find(eq("borrowRace", true))) {
+            String title = d.getString("name");
+            String expected = holder.get(title);
+            String actual = "Borrowed".equals(d.getString("status")) ? d.getString("borrowedBy") : null;
+            if (expected == null ? actual != null : !expected.equals(actual)) {
+                String v = name + ": " + title + " is lent to " + actual + ", harness expected " + expected;
+                if (violations.size() < 100) violations.add(v);
+            }
+        }
+    }
+
+    private static Document percentiles(Histogram h) {
+        return new Document("count", h.getTotalCount())
+                .append("p50Micros", h.getValueAtPercentile(50))
+                .append("p90Micros", h.getValueAtPercentile(90))
+                .append("p99Micros", h.getValueAtPercentile(99))
+                .append("p999Micros", h.getValueAtPercentile(99.9))
+                .append("maxMicros", h.getMaxValue());
+    }
+
+    private void print(String op, Histogram h, long doubles) {
+        System.out.printf("%-7s %-7s %9d %8d %8d %8d %8d %8d %8d%n", name, op, h.getTotalCount(), h.getValueAtPercentile(50),
+                h.getValueAtPercentile(90), h.getValueAtPercentile(99), h.getValueAtPercentile(99.9), h.getMaxValue(), doubles);
+        if (op.equals("return") && !violations.isEmpty()) System.out.println("[race] " + name + ": " + violations.size() + " final-state mismatches");
+    }
+
+    /**
+     * borrowBook/returnBook as they were before the single-findOneAndUpdate change: find the
+     * document by exact then partial title, update it by _id, then insert the transaction.
+     */
+    static final class OldPath implements Checkout {
+        private final MongoCollection<Document> books;
+        private final MongoCollection<Document> transactions;
+
+        OldPath(MongoCollection<Document> books, MongoCollection<Document> transactions) {
+            this.books = books;
+            this.transactions = transactions;
+        }
+
+        public boolean borrow(String title, String username) {
+            Document doc = books.find(and(regex("name", "^" + Pattern.quote(title) + "$", "i"), eq("status", "Available"))).first();
+            if (doc == null) {
+                doc = books.find(and(regex("name", title, "i"), eq("status", "Available"))).first();
+            }
+            if (doc == null) return false;
+            String now = Instant.now().toString();
+            books.updateOne(eq("_id", doc.get("_id")),
+                    combine(set("status", "Borrowed"), set("borrowedBy", username), set("lastUpdated", now)));
+            transactions.insertOne(new Document("action", "borrow").append("title", doc.getString("name"))
+                    .append("isbn", doc.getString("isbn")).append("username", username).append("timestamp", now));
+            return true;
+        }
+
+        public boolean returnBook(String title, String username) {
+            Document doc = books.find(and(regex("name", "^" + Pattern.quote(title) + "$", "i"), eq("status", "Borrowed"), eq("borrowedBy", username))).first();
+            if (doc == null) {
+                doc = books.find(and(regex("name", title, "i"), eq("status", "Borrowed"), eq("borrowedBy", username))).first();
+            }
+            if (doc == null) return false;
+            String now = Instant.now().toString();
+            books.updateOne(eq("_id", doc.get("_id")),
+                    combine(set("status", "Available"), set("borrowedBy", null), set("lastUpdated", now)));
+            transactions.insertOne(new Document("action", "return").append("title", doc.getString("name"))
+                    .append("isbn", doc.getString("isbn")).append("username", username).append("timestamp", now));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package bench;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonBinaryReader;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.demo.Product;
+import com.example.demo.ProductCodec;
+
+import model.Book;
+import model.Codecs;
+import model.EBook;
+import model.PrintedBook;
+import model.Student;
+import model.User;
+import model.Admin;
+import model.Reader;
+
+/**
+ * Decoding a batch of raw BSON rows the old way (DocumentCodec, then fromDocument) versus
+ * the hand-written codecs in model.Codecs / ProductCodec. Run with -prof gc to see the
+ * allocation difference, which is the point of the codecs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private static final int ROWS = 200; // one catalogue page
+    private static final DecoderContext CTX = DecoderContext.builder().build();
+
+    private final DocumentCodec documentCodec = new DocumentCodec();
+    private final Codec<Book> bookCodec = Codecs.REGISTRY.get(Book.class);
+    private final Codec<User> userCodec = Codecs.REGISTRY.get(User.class);
+    private final Codec<Product> productCodec = ProductCodec.REGISTRY.get(Product.class);
+
+    private List<byte[]> books;
+    private List<byte[]> users;
+    private List<byte[]> products;
+
+    @Setup
+    public void setup() {
+        books = new ArrayList<>();
+        users = new ArrayList<>();
+        products = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            Book b = i % 4 == 0
+                    ? new EBook("978-" + i, "Title " + i, "Author " + i, "https://example.org/" + i)
+                    : new PrintedBook("978-" + i, "Title " + i, "Author " + i, i % 3, i % 3 > 0);
+            // catalogue rows carry the UI columns too, which the Book path must skip
+            books.add(bytes(b.toDocument().append("name", "Title " + i).append("category", "Fiction")
+                    .append("status", "Available").append("lastUpdated", "2024-01-01T00:00:00Z")));
+            User u = switch (i % 3) {
+                case 0 -> new Student("u-" + i, "user" + i, "pw" + i, "S" + i);
+                case 1 -> new Admin("u-" + i, "user" + i, "pw" + i);
+                default -> new Reader("u-" + i, "user" + i, "pw" + i);
+            };
+            Document ud = u.toDocument();
+            if (u instanceof Student s) ud.append("studentNumber", s.getStudentNumber());
+            users.add(bytes(ud));
+            products.add(bytes(new Product("P" + i, "Product " + i, i * 1.5).toDocument()));
+        }
+    }
+
+    private static byte[] bytes(Document d) {
+        RawBsonDocument raw = RawBsonDocument.parse(d.toJson());
+        return raw.getByteBuffer().array().clone();
+    }
+
+    private static BsonBinaryReader reader(byte[] row) {
+        return new BsonBinaryReader(ByteBuffer.wrap(row));
+    }
+
+    @Benchmark
+    public void booksViaDocument(Blackhole bh) {
+        for (byte[] row : books) bh.consume(Book.fromDocument(documentCodec.decode(reader(row), CTX)));
+    }
+
+    @Benchmark
+    public void booksViaCodec(Blackhole bh) {
+        for (byte[] row : books) bh.consume(bookCodec.decode(reader(row), CTX));
+    }
+
+    @Benchmark
+    public void usersViaDocument(Blackhole bh) {
+        for (byte[] row : users) bh.consume(User.fromDocument(documentCodec.decode(reader(row), CTX)));
+    }
+
+    @Benchmark
+    public void usersViaCodec(Blackhole bh) {
+        for (byte[] row : users) bh.consume(userCodec.decode(reader(row), CTX));
+    }
+
+    @Benchmark
+    public void productsViaDocument(Blackhole bh) {
+        for (byte[] row : products) bh.consume(Product.fromDocument(documentCodec.decode(reader(row), CTX)));
+    }
+
+    @Benchmark
+    public void productsViaCodec(Blackhole bh) {
+        for (byte[] row : products) bh.consume(productCodec.decode(reader(row), CTX));
+    }
+}
@@ -0,0 +1,460 @@
+package bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWrapper;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.ListCollectionsIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.InsertManyResult;
+import com.mongodb.client.result.InsertOneResult;
+import com.mongodb.client.result.UpdateResult;
+
+/**
+ * In-memory stand-in for the handful of driver calls the service layer makes, so the
+ * service hot paths can be benchmarked without a server. Documents are kept as BsonDocument
+ * and go through the real codecs on the way in and out, so mapping costs stay realistic;
+ * what is missing is the network and the server's query engine (lookups are linear scans).
+ *
+ * Supported: find(...).first()/iteration, findOneAndUpdate and updateOne with
+ * $set/$unset/$inc/$push/$pull, insertOne/insertMany, deleteMany, createIndex (no-op), count
+ * methods and an empty listCollections.
+ * Filters understand equality, $and/$or, $in, $ne, $exists, $regex and the range operators,
+ * on dotted paths through arrays. aggregate returns nothing. Anything else throws.
+ * Collections named as sinks only count their inserts (and bulk writes), so an audit log
+ * does not grow without bound during a long benchmark run.
+ *
+ * A database created with a round-trip time parks the caller for half of it before and half
+ * after each server call, outside the store lock, so races between one call's read and the
+ * next call's write open up the way they would over a network.
+ */
+public final class FakeMongo {
+
+    private static final DecoderContext DECODE = DecoderContext.builder().build();
+
+    private final String dbName;
+    private final Set<String> sinks;
+    private final long halfRoundTripNanos;
+    private final Map<String, Store> stores = new ConcurrentHashMap<>();
+
+    private FakeMongo(String dbName, Set<String> sinks, long roundTripMicros) {
+        this.dbName = dbName;
+        this.sinks = sinks;
+        this.halfRoundTripNanos = TimeUnit.MICROSECONDS.toNanos(roundTripMicros) / 2;
+    }
+
+    private static final class Store {
+        final List<BsonDocument> docs = new ArrayList<>();
+        final AtomicLong inserted = new AtomicLong();
+        final boolean sink;
+
+        Store(boolean sink) { this.sink = sink; }
+    }
+
+    public static MongoDatabase database(String name, Set<String> sinkCollections) {
+        return database(name, sinkCollections, 0);
+    }
+
+    /** As {@link #database(String, Set)}, with every server call taking roundTripMicros. */
+    public static MongoDatabase database(String name, Set<String> sinkCollections, long roundTripMicros) {
+        FakeMongo m = new FakeMongo(name, sinkCollections, roundTripMicros);
+        return proxy(MongoDatabase.class, (self, method, args) -> switch (method.getName()) {
+            case "getName" -> name;
+            case "getCollection" -> m.collection((String) args[0], args.length > 1 ? (Class<?>) args[1] : Document.class,
+                    MongoClientSettings.getDefaultCodecRegistry());
+            case "getCodecRegistry" -> MongoClientSettings.getDefaultCodecRegistry();
+            // collections are created on first use and carry no options
+            case "listCollections" -> proxy(ListCollectionsIterable.class, (it, im, ia) -> switch (im.getName()) {
+                case "filter", "batchSize", "maxTime" -> it;
+                case "first" -> null;
+                case "iterator", "cursor" -> cursor(List.of().iterator());
+                default -> m.unsupported("ListCollectionsIterable", im);
+            });
+            default -> m.unsupported("MongoDatabase", method);
+        });
+    }
+
+    /** Inserts seen by the named collection, including sink collections. */
+    public static long insertedCount(MongoCollection<?> collection) {
+        return ((CollectionHandler) Proxy.getInvocationHandler(collection)).store.inserted.get();
+    }
+
+    private MongoCollection<?> collection(String name, Class<?> type, CodecRegistry registry) {
+        Store store = stores.computeIfAbsent(name, k -> new Store(sinks.contains(k)));
+        return proxy(MongoCollection.class, new CollectionHandler(name, store, type, registry));
+    }
+
+    private final class CollectionHandler implements InvocationHandler {
+        final String name;
+        final Store store;
+        final Class<?> type;
+        final CodecRegistry registry;
+
+        CollectionHandler(String name, Store store, Class<?> type, CodecRegistry registry) {
+            this.name = name;
+            this.store = store;
+            this.type = type;
+            this.registry = registry;
+        }
+
+        @Override
+        public Object invoke(Object self, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getNamespace": return new MongoNamespace(dbName, name);
+                case "getDocumentClass": return type;
+                case "getCodecRegistry": return registry;
+                case "withDocumentClass": return collection(name, (Class<?>) args[0], registry);
+                case "withCodecRegistry": return collection(name, type, (CodecRegistry) args[0]);
+                case "createIndex": return "fake";
+                case "countDocuments":
+                case "estimatedDocumentCount":
+                    synchronized (store) { return (long) store.docs.size(); }
+                case "insertOne":
+                    return serverCall(() -> { insert(List.of(args[0])); return InsertOneResult.unacknowledged(); });
+                case "insertMany":
+                    return serverCall(() -> { insert((List<?>) args[0]); return InsertManyResult.unacknowledged(); });
+                case "deleteMany":
+                    return serverCall(() -> DeleteResult.acknowledged(delete((Bson) args[0])));
+                case "updateOne":
+                    return serverCall(() -> updateOne((Bson) args[0], (Bson) args[1]));
+                case "bulkWrite":
+                    // only sinks take bulk writes: counted, never applied
+                    if (!store.sink) return unsupported("MongoCollection", method);
+                    return serverCall(() -> {
+                        store.inserted.addAndGet(((List<?>) args[0]).size());
+                        return BulkWriteResult.unacknowledged();
+                    });
+                case "aggregate":
+                    // pipelines are not evaluated; callers that rebuild state from one start empty
+                    return proxy(AggregateIterable.class, (it, im, ia) -> switch (im.getName()) {
+                        case "allowDiskUse", "batchSize", "maxTime", "collation", "comment", "hint" -> it;
+                        case "first" -> null;
+                        case "iterator", "cursor" -> cursor(List.of().iterator());
+                        default -> unsupported("AggregateIterable", im);
+                    });
+                case "find": return find(args == null || args.length == 0 || !(args[0] instanceof Bson) ? null : (Bson) args[0]);
+                case "findOneAndUpdate": return serverCall(() -> findOneAndUpdate((Bson) args[0], (Bson) args[1],
+                        args.length > 2 ? (FindOneAndUpdateOptions) args[2] : new FindOneAndUpdateOptions()));
+                case "toString": return "FakeCollection[" + name + "]";
+                case "hashCode": return System.identityHashCode(self);
+                case "equals": return self == args[0];
+                default: return unsupported("MongoCollection", method);
+            }
+        }
+
+        private void insert(List<?> values) {
+            store.inserted.addAndGet(values.size());
+            if (store.sink) return;
+            synchronized (store) {
+                for (Object v : values) {
+                    // like the driver's DocumentCodec, fill in a missing _id on the caller's document
+                    if (v instanceof Document d && !d.containsKey("_id")) d.put("_id", new ObjectId());
+                    store.docs.add(BsonDocumentWrapper.asBsonDocument(v, registry).clone());
+                }
+            }
+        }
+
+        private long delete(Bson filter) {
+            BsonDocument f = filter.toBsonDocument(BsonDocument.class, registry);
+            synchronized (store) {
+                int before = store.docs.size();
+                store.docs.removeIf(d -> matches(d, f, false));
+                return before - store.docs.size();
+            }
+        }
+
+        private Object decode(BsonDocument d) {
+            return d == null ? null : registry.get(type).decode(new BsonDocumentReader(d), DECODE);
+        }
+
+        private Object findOneAndUpdate(Bson filter, Bson update, FindOneAndUpdateOptions opts) {
+            BsonDocument f = filter.toBsonDocument(BsonDocument.class, registry);
+            BsonDocument u = update.toBsonDocument(BsonDocument.class, registry);
+            boolean ci = opts.getCollation() != null;
+            synchronized (store) {
+                for (BsonDocument d : store.docs) {
+                    if (!matches(d, f, ci)) continue;
+                    BsonDocument before = opts.getReturnDocument() == ReturnDocument.AFTER ? null : d.clone();
+                    apply(d, u);
+                    return decode(before != null ? before : d.clone());
+                }
+            }
+            return null;
+        }
+
+        private UpdateResult updateOne(Bson filter, Bson update) {
+            BsonDocument f = filter.toBsonDocument(BsonDocument.class, registry);
+            BsonDocument u = update.toBsonDocument(BsonDocument.class, registry);
+            synchronized (store) {
+                for (BsonDocument d : store.docs) {
+                    if (!matches(d, f, false)) continue;
+                    apply(d, u);
+                    return UpdateResult.acknowledged(1, 1L, null);
+                }
+            }
+            return UpdateResult.acknowledged(0, 0L, null);
+        }
+
+        private Object find(Bson filter) {
+            BsonDocument f = filter == null ? new BsonDocument() : filter.toBsonDocument(BsonDocument.class, registry);
+            Shape shape = new Shape();
+            return proxy(FindIterable.class, (self, method, args) -> switch (method.getName()) {
+                case "first" -> {
+                    List<Object> hit = serverCall(() -> snapshot(f, shape.ci, 1));
+                    yield hit.isEmpty() ? null : hit.get(0);
+                }
+                case "iterator", "cursor" -> cursor(serverCall(() -> snapshot(f, shape.ci, shape.limit)).iterator());
+                case "into" -> {
+                    @SuppressWarnings("unchecked")
+                    Collection<Object> target = (Collection<Object>) args[0];
+                    target.addAll(serverCall(() -> snapshot(f, shape.ci, shape.limit)));
+                    yield target;
+                }
+                case "forEach" -> {
+                    @SuppressWarnings("unchecked")
+                    Consumer<Object> action = (Consumer<Object>) args[0];
+                    serverCall(() -> snapshot(f, shape.ci, shape.limit)).forEach(action);
+                    yield null;
+                }
+                case "limit" -> {
+                    int n = (Integer) args[0];
+                    shape.limit = n <= 0 ? Integer.MAX_VALUE : n;
+                    yield self;
+                }
+                case "collation" -> {
+                    shape.ci = args[0] != null;
+                    yield self;
+                }
+                // the rest of cursor shaping does not change which documents a linear scan returns
+                case "projection", "sort", "skip", "batchSize", "hint", "hintString",
+                     "maxTime", "noCursorTimeout", "comment" -> self;
+                default -> unsupported("FindIterable", method);
+            });
+        }
+
+        private static final class Shape {
+            int limit = Integer.MAX_VALUE;
+            boolean ci;
+        }
+
+        private List<Object> snapshot(BsonDocument f, boolean ci, int limit) {
+            List<Object> out = new ArrayList<>();
+            synchronized (store) {
+                for (BsonDocument d : store.docs) {
+                    if (out.size() == limit) break;
+                    if (matches(d, f, ci)) out.add(decode(d.clone()));
+                }
+            }
+            return out;
+        }
+    }
+
+    // the request travels before the work, the reply after it
+    private <T> T serverCall(Supplier<T> work) {
+        if (halfRoundTripNanos > 0) LockSupport.parkNanos(halfRoundTripNanos);
+        T result = work.get();
+        if (halfRoundTripNanos > 0) LockSupport.parkNanos(halfRoundTripNanos);
+        return result;
+    }
+
+    private static MongoCursor<Object> cursor(Iterator<Object> it) {
+        @SuppressWarnings("unchecked")
+        MongoCursor<Object> c = proxy(MongoCursor.class, (self, method, args) -> switch (method.getName()) {
+            case "hasNext" -> it.hasNext();
+            case "next" -> it.next();
+            case "tryNext" -> it.hasNext() ? it.next() : null;
+            case "close" -> null;
+            default -> throw new UnsupportedOperationException("MongoCursor." + method.getName());
+        });
+        return c;
+    }
+
+    // --- query and update evaluation ---------------------------------------------------
+
+    static boolean matches(BsonDocument doc, BsonDocument filter, boolean caseInsensitive) {
+        for (Map.Entry<String, BsonValue> e : filter.entrySet()) {
+            String key = e.getKey();
+            BsonValue cond = e.getValue();
+            if (key.equals("$and")) {
+                for (BsonValue c : cond.asArray()) if (!matches(doc, c.asDocument(), caseInsensitive)) return false;
+            } else if (key.equals("$or")) {
+                boolean any = false;
+                for (BsonValue c : cond.asArray()) if (matches(doc, c.asDocument(), caseInsensitive)) { any = true; break; }
+                if (!any) return false;
+            } else if (key.equals("$nor")) {
+                for (BsonValue c : cond.asArray()) if (matches(doc, c.asDocument(), caseInsensitive)) return false;
+            } else if (!matchesField(values(doc, key), cond, caseInsensitive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // every value a dotted path reaches, descending into arrays the way the server does
+    private static List<BsonValue> values(BsonValue root, String path) {
+        List<BsonValue> out = new ArrayList<>();
+        collect(root, path.split("\\."), 0, out);
+        return out;
+    }
+
+    private static void collect(BsonValue v, String[] parts, int i, List<BsonValue> out) {
+        if (i == parts.length) {
+            out.add(v);
+            if (v.isArray()) out.addAll(v.asArray());
+            return;
+        }
+        if (v.isDocument()) {
+            BsonValue next = v.asDocument().get(parts[i]);
+            if (next != null) collect(next, parts, i + 1, out);
+        } else if (v.isArray()) {
+            for (BsonValue el : v.asArray()) if (el.isDocument()) collect(el, parts, i, out);
+        }
+    }
+
+    private static boolean matchesField(List<BsonValue> actual, BsonValue cond, boolean ci) {
+        if (cond.isRegularExpression()) {
+            // Filters.regex encodes {field: /pattern/options} rather than $regex
+            Pattern p = Pattern.compile(cond.asRegularExpression().getPattern(),
+                    cond.asRegularExpression().getOptions().contains("i") ? Pattern.CASE_INSENSITIVE : 0);
+            return actual.stream().anyMatch(a -> a.isString() && p.matcher(a.asString().getValue()).find());
+        }
+        if (!cond.isDocument() || cond.asDocument().isEmpty() || !cond.asDocument().getFirstKey().startsWith("$")) {
+            return anyEqual(actual, cond, ci);
+        }
+        BsonDocument ops = cond.asDocument();
+        for (Map.Entry<String, BsonValue> op : ops.entrySet()) {
+            BsonValue v = op.getValue();
+            boolean ok = switch (op.getKey()) {
+                case "$eq" -> anyEqual(actual, v, ci);
+                case "$ne" -> !anyEqual(actual, v, ci);
+                case "$in" -> in(actual, v.asArray(), ci);
+                case "$nin" -> !in(actual, v.asArray(), ci);
+                case "$exists" -> !actual.isEmpty() == v.asBoolean().getValue();
+                case "$gt" -> actual.stream().anyMatch(a -> comparable(a, v) && compare(a, v) > 0);
+                case "$gte" -> actual.stream().anyMatch(a -> comparable(a, v) && compare(a, v) >= 0);
+                case "$lt" -> actual.stream().anyMatch(a -> comparable(a, v) && compare(a, v) < 0);
+                case "$lte" -> actual.stream().anyMatch(a -> comparable(a, v) && compare(a, v) <= 0);
+                case "$regex" -> {
+                    Pattern p = Pattern.compile(v.asString().getValue(),
+                            ops.containsKey("$options") && ops.getString("$options").getValue().contains("i") ? Pattern.CASE_INSENSITIVE : 0);
+                    yield actual.stream().anyMatch(a -> a.isString() && p.matcher(a.asString().getValue()).find());
+                }
+                case "$options" -> true;
+                default -> throw new UnsupportedOperationException("filter operator " + op.getKey());
+            };
+            if (!ok) return false;
+        }
+        return true;
+    }
+
+    private static boolean in(List<BsonValue> actual, BsonArray values, boolean ci) {
+        for (BsonValue v : values) if (anyEqual(actual, v, ci)) return true;
+        return false;
+    }
+
+    private static boolean anyEqual(List<BsonValue> actual, BsonValue expected, boolean ci) {
+        if (expected.isNull() && actual.isEmpty()) return true;
+        for (BsonValue a : actual) if (equal(a, expected, ci)) return true;
+        return false;
+    }
+
+    private static boolean equal(BsonValue actual, BsonValue expected, boolean ci) {
+        if (expected.isNull()) return actual.isNull();
+        if (ci && actual.isString() && expected.isString()) {
+            return actual.asString().getValue().equalsIgnoreCase(expected.asString().getValue());
+        }
+        if (actual.isNumber() && expected.isNumber()) return compare(actual, expected) == 0;
+        return actual.equals(expected);
+    }
+
+    // range operators only compare within a type family, like the server
+    private static boolean comparable(BsonValue a, BsonValue b) {
+        return (a.isNumber() && b.isNumber()) || a.getBsonType() == b.getBsonType();
+    }
+
+    private static int compare(BsonValue a, BsonValue b) {
+        if (a.isNumber() && b.isNumber()) return Double.compare(a.asNumber().doubleValue(), b.asNumber().doubleValue());
+        if (a.isString() && b.isString()) return a.asString().getValue().compareTo(b.asString().getValue());
+        if (a.isDateTime() && b.isDateTime()) return Long.compare(a.asDateTime().getValue(), b.asDateTime().getValue());
+        if (a.isObjectId() && b.isObjectId()) return a.asObjectId().getValue().compareTo(b.asObjectId().getValue());
+        return Integer.compare(a.getBsonType().getValue(), b.getBsonType().getValue());
+    }
+
+    static void apply(BsonDocument doc, BsonDocument update) {
+        for (Map.Entry<String, BsonValue> op : update.entrySet()) {
+            BsonDocument fields = op.getValue().asDocument();
+            switch (op.getKey()) {
+                case "$set" -> fields.forEach(doc::put);
+                case "$unset" -> fields.keySet().forEach(doc::remove);
+                case "$inc" -> fields.forEach((k, v) -> {
+                    BsonValue cur = doc.get(k);
+                    if ((cur == null || cur.isInt32()) && v.isInt32()) {
+                        doc.put(k, new BsonInt32((cur == null ? 0 : cur.asInt32().getValue()) + v.asInt32().getValue()));
+                    } else {
+                        long base = cur == null ? 0 : cur.asNumber().longValue();
+                        doc.put(k, new BsonInt64(base + v.asNumber().longValue()));
+                    }
+                });
+                case "$push" -> fields.forEach((k, v) -> {
+                    BsonValue cur = doc.get(k);
+                    BsonArray arr = cur == null ? new BsonArray() : cur.asArray();
+                    arr.add(v);
+                    doc.put(k, arr);
+                });
+                case "$pull" -> fields.forEach((k, v) -> {
+                    BsonValue cur = doc.get(k);
+                    if (cur == null || !cur.isArray()) return;
+                    // a document condition matches elements by their fields, anything else by equality
+                    cur.asArray().removeIf(el -> v.isDocument() && el.isDocument()
+                            ? matches(el.asDocument(), v.asDocument(), false) : el.equals(v));
+                });
+                default -> throw new UnsupportedOperationException("update operator " + op.getKey());
+            }
+        }
+    }
+
+    private Object unsupported(String type, Method method) {
+        throw new UnsupportedOperationException(type + "." + method.getName() + " is not faked");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeMongo.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
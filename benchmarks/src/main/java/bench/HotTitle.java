@@ -0,0 +1,163 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+
+import service.BorrowStats;
+import service.CopySelector;
+import service.LibraryManagementSystem;
+import service.MongoClientRegistry;
+import service.TransactionHistory;
+import service.TransactionLog;
+
+/**
+ * Contention test for one popular title stored as one document per copy.
+ *
+ * For each selection mode (FIRST, STRIPED) and each reader count, the title is reseeded with
+ * --copies available copy documents and every reader loops borrow-then-return on it for
+ * --seconds. The table shows completed borrows per second, the conflict rate reported by
+ * {@link CopySelector} and how often a borrow found nothing. With at least as many copies as
+ * readers a borrow should never come back empty, so any such miss is a violation.
+ *
+ * Usage: HotTitle [--uri URI] [--db DB] [--copies N] [--readers 1,2,4,8,16,32] [--seconds N]
+ *                 [--modes FIRST,STRIPED] [--report FILE] [--fake]
+ * Each mode uses its own database (DB-first, DB-striped), since selectors are per collection.
+ * The transaction log runs FIRE_AND_FORGET unless -Dlibrary.txlog.durability says otherwise,
+ * so its linger does not hide the claim itself. --fake runs against FakeMongo, whose single
+ * lock serializes everything; it checks the harness, not the scaling.
+ */
+public class HotTitle {
+
+    private static final String TITLE = "Hot Title";
+    private static final String USER_PREFIX = "hot-reader-";
+
+    public static void main(String[] args) throws Exception {
+        String uri = "mongodb://localhost:27017", dbName = "LibraryHotTitle", report = "hot-title-report.json";
+        String readerSpec = "1,2,4,8,16,32", modeSpec = "FIRST,STRIPED";
+        int copies = 32, seconds = 5;
+        boolean fake = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--uri": uri = args[++i]; break;
+                case "--db": dbName = args[++i]; break;
+                case "--copies": copies = Integer.parseInt(args[++i]); break;
+                case "--readers": readerSpec = args[++i]; break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--modes": modeSpec = args[++i]; break;
+                case "--report": report = args[++i]; break;
+                case "--fake": fake = true; break;
+                default: System.out.println("Unknown option " + args[i]); return;
+            }
+        }
+        if (System.getProperty("library.txlog.durability") == null) {
+            System.setProperty("library.txlog.durability", TransactionLog.Durability.FIRE_AND_FORGET.name());
+        }
+
+        List<Document> steps = new ArrayList<>();
+        List<String> violations = new ArrayList<>();
+        System.out.printf("[hot] %d copies, %ds per step%n", copies, seconds);
+        System.out.printf("%-8s %7s %10s %9s %9s %9s%n", "mode", "readers", "borrows/s", "conflict", "fallback", "empty");
+        try {
+            for (String m : modeSpec.split(",")) {
+                CopySelector.Mode mode = CopySelector.Mode.valueOf(m.trim().toUpperCase());
+                System.setProperty("library.checkout.selection", mode.name());
+                String modeDb = dbName + "-" + mode.name().toLowerCase();
+                MongoClientRegistry.Lease lease = fake ? null : MongoClientRegistry.acquire(uri, modeDb);
+                try {
+                    for (String r : readerSpec.split(",")) {
+                        int readers = Integer.parseInt(r.trim());
+                        MongoDatabase db = fake ? FakeMongo.database(modeDb + "-" + readers, Set.of("transactions", "borrow_stats")) : lease.getDatabase();
+                        Document step = step(db, mode, readers, copies, seconds, !fake);
+                        steps.add(step);
+                        System.out.printf("%-8s %7d %10.0f %8.1f%% %9d %9d%n", mode, readers, step.getDouble("borrowsPerSecond"),
+                                step.getDouble("conflictRate") * 100, step.getLong("fallbacks"), step.getLong("empty"));
+                        if (readers <= copies && step.getLong("empty") > 0) {
+                            violations.add(mode + " with " + readers + " readers: " + step.getLong("empty")
+                                    + " borrows found no copy although " + copies + " exist");
+                        }
+                    }
+                } finally {
+                    TransactionLog.shutdownAll();
+                    BorrowStats.shutdownAll();
+                    if (lease != null) MongoClientRegistry.release(lease);
+                }
+            }
+        } finally {
+            MongoClientRegistry.shutdown();
+        }
+        violations.forEach(v -> System.out.println("[hot] violation: " + v));
+        Document result = new Document("startedAt", Instant.now().toString())
+                .append("target", fake ? "fake" : uri + "/" + dbName)
+                .append("copies", copies)
+                .append("seconds", seconds)
+                .append("steps", steps)
+                .append("violations", violations);
+        Files.writeString(Path.of(report), result.toJson(JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).indent(true).build()));
+        System.out.println("[hot] report written to " + report);
+        if (!violations.isEmpty()) System.exit(1);
+    }
+
+    static Document step(MongoDatabase db, CopySelector.Mode mode, int readers, int copies, int seconds, boolean cleanUp)
+            throws InterruptedException {
+        MongoCollection<Document> products = db.getCollection("products");
+        if (cleanUp) {
+            products.deleteMany(Filters.eq("hotTitle", true));
+            db.getCollection(TransactionHistory.COLLECTION)
+                    .deleteMany(Filters.regex(TransactionHistory.of(db).usernameField(), "^" + USER_PREFIX));
+        }
+        String now = Instant.now().toString();
+        List<Document> docs = new ArrayList<>(copies);
+        for (int i = 0; i < copies; i++) {
+            docs.add(new Document("code", String.format("HOT-%04d", i)).append("name", TITLE).append("isbn", "978-hot")
+                    .append("category", "Fiction").append("status", "Available").append("hotTitle", true)
+                    .append("createdDate", now).append("lastUpdated", now));
+        }
+        products.insertMany(docs);
+
+        LibraryManagementSystem lms = new LibraryManagementSystem(db);
+        CopySelector selector = CopySelector.of(db);
+        selector.reset();
+        AtomicLong borrows = new AtomicLong(), empty = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long t0 = System.nanoTime();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < readers; i++) {
+                String username = USER_PREFIX + i;
+                pool.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        if (!lms.borrowBook(TITLE, username)) { empty.incrementAndGet(); continue; }
+                        borrows.incrementAndGet();
+                        lms.returnBook(TITLE, username);
+                    }
+                });
+            }
+        }
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+        CopySelector.Stats st = selector.stats();
+        return new Document("mode", mode.name())
+                .append("readers", readers)
+                .append("borrows", borrows.get())
+                .append("borrowsPerSecond", borrows.get() / elapsed)
+                .append("empty", empty.get())
+                .append("attempts", st.attempts())
+                .append("conflicts", st.conflicts())
+                .append("conflictRate", st.conflictRate())
+                .append("fallbacks", st.fallbacks());
+    }
+}
@@ -0,0 +1,98 @@
+package bench;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
+import model.Reader;
+import service.BorrowStats;
+import service.LibraryManagementSystem;
+import service.TransactionLog;
+import service.UserCache;
+
+/**
+ * borrowBook/returnBook/login against {@link FakeMongo}: the service code, codecs, user cache
+ * and transaction log are real, the server is not. Numbers therefore show the client-side
+ * cost of each call (and the transaction log's ack wait under FLUSH_ON_ACK), not latency
+ * against a real deployment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LibraryBenchmark {
+
+    private static final int BOOKS = 100;
+    private static final int USERS = 100;
+
+    @Param({"FIRE_AND_FORGET", "FLUSH_ON_ACK"})
+    public String durability;
+
+    private LibraryManagementSystem lms;
+    private UserCache cache;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        System.setProperty("library.txlog.durability", durability);
+        MongoDatabase db = FakeMongo.database("BenchDB-" + durability, Set.of("transactions", "borrow_stats"));
+        MongoCollection<Document> products = db.getCollection("products");
+        for (int i = 0; i < BOOKS; i++) {
+            products.insertOne(new Document("code", "C" + i).append("name", "Title " + i).append("isbn", "978-" + i)
+                    .append("category", "Fiction").append("status", "Available")
+                    .append("copiesTotal", 3).append("copiesAvailable", 3).append("activeLoans", List.of())
+                    .append("createdDate", "2024-01-01T00:00:00Z").append("lastUpdated", "2024-01-01T00:00:00Z"));
+        }
+        lms = new LibraryManagementSystem(db);
+        for (int i = 0; i < USERS; i++) lms.addUser(new Reader("u-" + i, "user" + i, "pw" + i));
+        cache = UserCache.forNamespace(db.getCollection("users").getNamespace().getFullName());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TransactionLog.shutdownAll();
+        BorrowStats.shutdownAll();
+    }
+
+    /** One borrow and the matching return, cycling through the catalogue. */
+    @Benchmark
+    public boolean borrowThenReturn() {
+        int i = next++ % BOOKS;
+        String title = "title " + i; // lower case: exercises the case-insensitive first attempt
+        return lms.borrowBook(title, "user1") & lms.returnBook(title, "user1");
+    }
+
+    @Benchmark
+    public Object loginCached() {
+        int i = next++ % USERS;
+        return lms.login("user" + i, "pw" + i);
+    }
+
+    /** Every login misses the cache, so this includes the query and the User decode. */
+    @Benchmark
+    public Object loginUncached() {
+        int i = next++ % USERS;
+        cache.clear();
+        return lms.login("user" + i, "pw" + i);
+    }
+}
@@ -0,0 +1,357 @@
+package bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+
+import model.Reader;
+import service.BorrowStats;
+import service.CatalogSearchIndex;
+import service.LibraryManagementSystem;
+import service.MongoClientRegistry;
+import service.TitleResolver;
+import service.TransactionHistory;
+import service.TransactionLog;
+
+/**
+ * Closed-loop load generator for the borrow/return flow.
+ *
+ * N virtual-thread readers each log in as their own user and then pick operations from a
+ * weighted mix until the run ends. Latencies go into one HdrHistogram Recorder per operation;
+ * a sampler thread takes an interval snapshot every second for the throughput timeline and
+ * folds it into the totals once warmup is over.
+ *
+ * Each title is an inventory entry with --copies copies. Invariants: a successful borrow must
+ * not take a title past its copy count or give a reader a second copy, and at the end the
+ * products and transactions collections must agree with what the readers think they hold.
+ * All test data is tagged (loadTest:true, users and transactions by the "load-" username
+ * prefix) and replaced on each run, so any database can be used.
+ *
+ * Usage: LoadTest [--uri URI] [--db DB] [--readers N] [--duration SECONDS] [--warmup SECONDS]
+ *                 [--books N] [--copies N] [--mix login=40,borrow=25,return=25,search=10] [--report FILE] [--fake]
+ * --fake runs against FakeMongo instead of a server, which is useful to check the harness.
+ */
+public class LoadTest {
+
+    enum Op { LOGIN, BORROW, RETURN, SEARCH }
+
+    private static final String USER_PREFIX = "load-user-";
+    private static final String PASSWORD = "load";
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final LibraryManagementSystem lms;
+    private final MongoCollection<Document> products;
+    private final MongoCollection<Document> transactions;
+    private final TransactionHistory history;
+    private final int readers;
+    private final int books;
+    private final int copies;
+    private final Map<Op, Integer> mix;
+
+    private final Map<Op, Recorder> recorders = new EnumMap<>(Op.class);
+    private final Map<Op, Histogram> totals = new EnumMap<>(Op.class);
+    private final Map<Op, AtomicLong> errors = new EnumMap<>(Op.class);
+    private final Map<Op, AtomicLong> rejected = new EnumMap<>(Op.class);
+    private final List<Document> timeline = new ArrayList<>();
+    private final List<String> violations = new ArrayList<>();
+    // title -> usernames the harness believes hold a copy
+    private final Map<String, Set<String>> held = new ConcurrentHashMap<>();
+
+    LoadTest(MongoDatabase db, int readers, int books, int copies, Map<Op, Integer> mix) {
+        this.lms = new LibraryManagementSystem(db);
+        this.products = db.getCollection("products");
+        this.transactions = db.getCollection(TransactionHistory.COLLECTION);
+        this.history = TransactionHistory.of(db);
+        this.readers = readers;
+        this.books = books;
+        this.copies = copies;
+        this.mix = mix;
+        for (Op op : Op.values()) {
+            recorders.put(op, new Recorder(MAX_LATENCY_MICROS, 3));
+            totals.put(op, new Histogram(MAX_LATENCY_MICROS, 3));
+            errors.put(op, new AtomicLong());
+            rejected.put(op, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String uri = "mongodb://localhost:27017", dbName = "LibraryLoadTest", report = "load-report.json";
+        int readers = 50, duration = 30, warmup = 5, books = 200, copies = 2;
+        String mixSpec = "login=40,borrow=25,return=25,search=10";
+        boolean fake = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--uri": uri = args[++i]; break;
+                case "--db": dbName = args[++i]; break;
+                case "--readers": readers = Integer.parseInt(args[++i]); break;
+                case "--duration": duration = Integer.parseInt(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--books": books = Integer.parseInt(args[++i]); break;
+                case "--copies": copies = Integer.parseInt(args[++i]); break;
+                case "--mix": mixSpec = args[++i]; break;
+                case "--report": report = args[++i]; break;
+                case "--fake": fake = true; break;
+                default: System.out.println("Unknown option " + args[i]); return;
+            }
+        }
+        Map<Op, Integer> mix = parseMix(mixSpec);
+
+        MongoClientRegistry.Lease lease = fake ? null : MongoClientRegistry.acquire(uri, dbName);
+        MongoDatabase db = fake ? FakeMongo.database(dbName, Set.of("borrow_stats")) : lease.getDatabase();
+        Document result;
+        try {
+            LoadTest test = new LoadTest(db, readers, books, copies, mix);
+            test.seed(!fake);
+            result = test.run(warmup, duration);
+            result.put("target", fake ? "fake" : uri + "/" + dbName);
+        } finally {
+            TransactionLog.shutdownAll();
+            BorrowStats.shutdownAll();
+            if (lease != null) MongoClientRegistry.release(lease);
+            MongoClientRegistry.shutdown();
+        }
+        Files.writeString(Path.of(report), result.toJson(JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).indent(true).build()));
+        System.out.println("[load] report written to " + report);
+        if (!result.getList("violations", String.class).isEmpty()) System.exit(1);
+    }
+
+    static Map<Op, Integer> parseMix(String spec) {
+        Map<Op, Integer> mix = new EnumMap<>(Op.class);
+        for (String part : spec.split(",")) {
+            String[] kv = part.split("=");
+            mix.put(Op.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+        }
+        return mix;
+    }
+
+    static String title(int i) {
+        // fixed width, so the partial-title fallback in borrowBook cannot match a different book
+        return String.format("Load Book %06d", i);
+    }
+
+    void seed(boolean cleanUp) {
+        if (cleanUp) {
+            products.deleteMany(Filters.eq("loadTest", true));
+            transactions.deleteMany(Filters.regex(history.usernameField(), "^" + USER_PREFIX));
+            for (int i = 0; i < readers; i++) lms.deleteUserByUsername(USER_PREFIX + i);
+        }
+        String now = Instant.now().toString();
+        List<Document> docs = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            docs.add(new Document("name", title(i)).append("isbn", "load-" + i).append("category", "Load")
+                    .append("status", "Available").append("loadTest", true)
+                    .append("copiesTotal", copies).append("copiesAvailable", copies).append("activeLoans", List.of())
+                    .append("createdDate", now).append("lastUpdated", now));
+        }
+        products.insertMany(docs);
+        // written behind the LibraryManagementSystem's back, so tell the resolver (insertMany filled in _id)
+        TitleResolver resolver = TitleResolver.forCollection(products);
+        for (Document d : docs) resolver.put(d);
+        for (int i = 0; i < readers; i++) lms.addUser(new Reader("load-" + i, USER_PREFIX + i, PASSWORD));
+        CatalogSearchIndex.forCollection(products).build(products);
+    }
+
+    Document run(int warmupSeconds, int durationSeconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long warmupEnd = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(durationSeconds);
+        System.out.printf("[load] %d readers, %ds warmup + %ds, mix %s%n", readers, warmupSeconds, durationSeconds, mix);
+
+        Thread sampler = Thread.ofPlatform().daemon().name("load-sampler").start(() -> sample(start, warmupEnd, end));
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < readers; i++) {
+                String username = USER_PREFIX + i;
+                pool.submit(() -> reader(username, end));
+            }
+        }
+        sampler.join();
+        checkFinalState();
+        return report(durationSeconds);
+    }
+
+    private void reader(String username, long end) {
+        List<String> mine = new ArrayList<>();
+        int weightSum = mix.values().stream().mapToInt(Integer::intValue).sum();
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        timed(Op.LOGIN, () -> lms.login(username, PASSWORD) != null);
+        while (System.nanoTime() < end) {
+            Op op = pick(rnd.nextInt(weightSum));
+            if (op == Op.RETURN && mine.isEmpty()) op = Op.BORROW;
+            switch (op) {
+                case LOGIN -> timed(op, () -> lms.login(username, PASSWORD) != null);
+                case BORROW -> {
+                    String title = title(rnd.nextInt(books));
+                    if (timed(op, () -> lms.borrowBook(title, username))) {
+                        Set<String> holders = held.computeIfAbsent(title, k -> ConcurrentHashMap.newKeySet());
+                        synchronized (holders) {
+                            if (!holders.add(username)) violation("second copy of " + title + " lent to " + username);
+                            else if (holders.size() > copies) violation("over-borrowed: " + title + " held by " + holders);
+                        }
+                        mine.add(title);
+                    }
+                }
+                case RETURN -> {
+                    String title = mine.remove(rnd.nextInt(mine.size()));
+                    // release before the call: while it is in flight nobody else can claim that copy anyway
+                    Set<String> holders = held.get(title);
+                    synchronized (holders) { holders.remove(username); }
+                    if (!timed(op, () -> lms.returnBook(title, username))) {
+                        violation("return rejected for a book " + username + " holds: " + title);
+                        synchronized (holders) { holders.add(username); }
+                        mine.add(title);
+                    }
+                }
+                case SEARCH -> timed(op, () -> {
+                    String q = "book " + String.format("%06d", rnd.nextInt(books)).substring(0, 4);
+                    List<Object> ids = CatalogSearchIndex.forCollection(products).search(q, 50);
+                    products.find(Filters.in("_id", ids)).projection(Projections.include("name", "status")).into(new ArrayList<>());
+                    return true;
+                });
+            }
+        }
+    }
+
+    private Op pick(int r) {
+        for (Map.Entry<Op, Integer> e : mix.entrySet()) {
+            r -= e.getValue();
+            if (r < 0) return e.getKey();
+        }
+        return Op.LOGIN;
+    }
+
+    private interface Call { boolean run(); }
+
+    private boolean timed(Op op, Call call) {
+        long t0 = System.nanoTime();
+        boolean ok;
+        try {
+            ok = call.run();
+        } catch (RuntimeException e) {
+            errors.get(op).incrementAndGet();
+            return false;
+        } finally {
+            recorders.get(op).recordValue(Math.min(MAX_LATENCY_MICROS, (System.nanoTime() - t0) / 1000));
+        }
+        if (!ok) rejected.get(op).incrementAndGet();
+        return ok;
+    }
+
+    private synchronized void violation(String message) {
+        if (violations.size() < 100) violations.add(message);
+        System.err.println("[load] VIOLATION " + message);
+    }
+
+    private void sample(long start, long warmupEnd, long end) {
+        Map<Op, Histogram> recycled = new EnumMap<>(Op.class);
+        long next = start;
+        while (true) {
+            next += TimeUnit.SECONDS.toNanos(1);
+            long now;
+            while ((now = System.nanoTime()) < Math.min(next, end)) {
+                try { Thread.sleep(Math.max(1, (Math.min(next, end) - now) / 1_000_000)); } catch (InterruptedException e) { return; }
+            }
+            boolean measuring = now > warmupEnd;
+            Document point = new Document("second", TimeUnit.NANOSECONDS.toSeconds(now - start)).append("warmup", !measuring);
+            for (Op op : Op.values()) {
+                Histogram h = recorders.get(op).getIntervalHistogram(recycled.get(op));
+                recycled.put(op, h);
+                point.append(op.name().toLowerCase(), h.getTotalCount());
+                if (measuring) totals.get(op).add(h);
+            }
+            synchronized (timeline) { timeline.add(point); }
+            if (now >= end) return;
+        }
+    }
+
+    private void checkFinalState() {
+        TransactionLog.flushAll();
+        for (Document d : products.find(Filters.eq("loadTest", true))
+                .projection(Projections.include("name", "copiesAvailable", "activeLoans"))) {
+            String name = d.getString("name");
+            Set<String> expected = held.getOrDefault(name, Set.of());
+            Set<String> actual = new HashSet<>();
+            for (Document loan : d.getList("activeLoans", Document.class, List.of())) actual.add(loan.getString("username"));
+            if (!actual.equals(expected))
+                violation("final state: " + name + " lent to " + actual + ", harness expected " + expected);
+            int available = ((Number) d.get("copiesAvailable")).intValue();
+            if (available != copies - actual.size())
+                violation("final state: " + name + " has " + available + " available with " + actual.size() + " of " + copies + " lent");
+        }
+        // borrows - returns per isbn is the number of copies still out
+        Map<String, Integer> balance = new HashMap<>();
+        List<String> isbnPath = List.of(history.isbnField().split("\\."));
+        for (Document tx : transactions.find(Filters.regex(history.usernameField(), "^" + USER_PREFIX))
+                .projection(Projections.include("action", history.isbnField()))) {
+            balance.merge(tx.getEmbedded(isbnPath, String.class), "borrow".equals(tx.getString("action")) ? 1 : -1, Integer::sum);
+        }
+        balance.forEach((isbn, b) -> {
+            if (b < 0 || b > copies) violation("transaction log: isbn " + isbn + " has borrow-return balance " + b);
+        });
+    }
+
+    private Document report(int durationSeconds) {
+        Document ops = new Document();
+        System.out.printf("%-7s %9s %8s %7s %9s %9s %9s %9s %9s%n", "op", "count", "ops/s", "errors", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (Op op : Op.values()) {
+            Histogram h = totals.get(op);
+            Map<String, Object> o = new LinkedHashMap<>();
+            o.put("count", h.getTotalCount());
+            o.put("throughput", (double) h.getTotalCount() / durationSeconds);
+            o.put("rejected", rejected.get(op).get());
+            o.put("errors", errors.get(op).get());
+            o.put("meanMicros", h.getMean());
+            o.put("p50Micros", h.getValueAtPercentile(50));
+            o.put("p90Micros", h.getValueAtPercentile(90));
+            o.put("p99Micros", h.getValueAtPercentile(99));
+            o.put("p999Micros", h.getValueAtPercentile(99.9));
+            o.put("maxMicros", h.getMaxValue());
+            ops.append(op.name().toLowerCase(), new Document(o));
+            System.out.printf("%-7s %9d %8.0f %7d %9d %9d %9d %9d %9d%n", op.name().toLowerCase(), h.getTotalCount(),
+                    (double) h.getTotalCount() / durationSeconds, errors.get(op).get(), h.getValueAtPercentile(50),
+                    h.getValueAtPercentile(90), h.getValueAtPercentile(99), h.getValueAtPercentile(99.9), h.getMaxValue());
+        }
+        System.out.println("[load] violations: " + violations.size());
+        synchronized (timeline) {
+            return new Document("finishedAt", Instant.now().toString())
+                    .append("readers", readers)
+                    .append("books", books)
+                    .append("copies", copies)
+                    .append("durationSeconds", durationSeconds)
+                    .append("mix", new Document(mixAsStrings()))
+                    .append("operations", ops)
+                    .append("timeline", new ArrayList<>(timeline))
+                    .append("violations", new ArrayList<>(violations));
+        }
+    }
+
+    private Map<String, Object> mixAsStrings() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        mix.forEach((k, v) -> m.put(k.name().toLowerCase(), v));
+        return m;
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.demo.Product;
+
+import model.Book;
+import model.EBook;
+import model.PrintedBook;
+import model.Student;
+import model.User;
+
+/** Per-object cost of the Document mapping methods on the model classes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+
+    private final PrintedBook printed = new PrintedBook("978-1", "Title", "Author", 3, true);
+    private final EBook ebook = new EBook("978-2", "Title", "Author", "https://example.org/2");
+    private final Student student = new Student("u-1", "user1", "pw", "S1");
+    private final Product product = new Product("P1", "Product", 9.99);
+
+    private final Document printedDoc = printed.toDocument().append("name", "Title").append("status", "Available");
+    private final Document ebookDoc = ebook.toDocument();
+    private final Document studentDoc = student.toDocument().append("studentNumber", "S1");
+    private final Document productDoc = product.toDocument();
+
+    @Benchmark public Document printedBookToDocument() { return printed.toDocument(); }
+    @Benchmark public Document ebookToDocument() { return ebook.toDocument(); }
+    @Benchmark public Book printedBookFromDocument() { return Book.fromDocument(printedDoc); }
+    @Benchmark public Book ebookFromDocument() { return Book.fromDocument(ebookDoc); }
+    @Benchmark public Document userToDocument() { return student.toDocument(); }
+    @Benchmark public User userFromDocument() { return User.fromDocument(studentDoc); }
+    @Benchmark public Document productToDocument() { return product.toDocument(); }
+    @Benchmark public Product productFromDocument() { return Product.fromDocument(productDoc); }
+}
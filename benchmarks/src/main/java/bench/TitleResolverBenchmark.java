@@ -0,0 +1,91 @@
+package bench;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.client.MongoCollection;
+
+import service.TitleResolver;
+
+/**
+ * Title resolution for borrow/return over a synthetic catalogue of {@code titles} names, each
+ * three or four words from a 3,000-word vocabulary, so common words produce long trigram
+ * postings as in a real catalogue. The typo cases change one or two letters of a known name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TitleResolverBenchmark {
+
+    private static final int WORDS = 3_000;
+
+    @Param({"10000", "100000"})
+    public int titles;
+
+    private TitleResolver resolver;
+    private String known, oneTypo, twoTypos, unknown;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(11);
+        String[] words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            StringBuilder w = new StringBuilder();
+            int len = 3 + random.nextInt(7);
+            for (int c = 0; c < len; c++) w.append((char) ('a' + random.nextInt(26)));
+            words[i] = w.toString();
+        }
+        MongoCollection<Document> products = FakeMongo.database("TitleResolver-" + titles, Set.of()).getCollection("products");
+        resolver = TitleResolver.forCollection(products);
+        resolver.build(products); // empty; marks the resolver ready
+        for (int i = 0; i < titles; i++) {
+            StringBuilder name = new StringBuilder();
+            int n = 3 + random.nextInt(2);
+            for (int w = 0; w < n; w++) name.append(w == 0 ? "" : " ").append(words[random.nextInt(WORDS)]);
+            resolver.put(new Document("_id", i).append("name", name.toString()).append("isbn", "978-" + i));
+            if (i == titles / 2) known = name.toString();
+        }
+        oneTypo = known.substring(0, 4) + "x" + known.substring(5);
+        twoTypos = "q" + oneTypo.substring(1, oneTypo.length() - 1) + "q";
+        unknown = "Completely Unrelated Title";
+    }
+
+    @Benchmark
+    public List<TitleResolver.Match> exact() {
+        return resolver.resolve(known, 64);
+    }
+
+    @Benchmark
+    public List<TitleResolver.Match> oneTypo() {
+        return resolver.resolve(oneTypo, 64);
+    }
+
+    @Benchmark
+    public List<TitleResolver.Match> twoTypos() {
+        return resolver.resolve(twoTypos, 64);
+    }
+
+    @Benchmark
+    public List<TitleResolver.Match> unknown() {
+        return resolver.resolve(unknown, 64);
+    }
+}
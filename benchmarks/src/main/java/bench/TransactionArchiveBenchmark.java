@@ -0,0 +1,92 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mongodb.client.MongoDatabase;
+
+import service.TransactionArchive;
+import service.TransactionHistory;
+
+/**
+ * Reads from archived history: 300,000 entries over 1,000 days by 10,000 readers and
+ * 20,000 titles, archived into segments in a temp directory. Each query asks for one reader's
+ * or one title's entries in a 30-day window, so the time range and the Bloom filters in the
+ * sparse index have to skip almost every block.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionArchiveBenchmark {
+
+    private static final int ENTRIES = 300_000;
+    private static final int DAYS = 1_000;
+
+    private TransactionArchive archive;
+    private Instant start;
+    private final Random random = new Random(3);
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path dir = Files.createTempDirectory("tx-archive");
+        System.setProperty("library.archive.dir", dir.toString());
+        MongoDatabase db = FakeMongo.database("TransactionArchive", Set.of());
+        TransactionHistory history = TransactionHistory.of(db);
+        start = Instant.now().minus(Duration.ofDays(DAYS + 1));
+        long step = Duration.ofDays(DAYS).toMillis() / ENTRIES;
+        List<Document> docs = new ArrayList<>(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            int title = random.nextInt(20_000);
+            docs.add(history.entry(i % 2 == 0 ? "borrow" : "return", "Title " + title, "978-" + title,
+                    "reader-" + random.nextInt(10_000), start.plusMillis(i * step)));
+        }
+        db.getCollection(TransactionHistory.COLLECTION).insertMany(docs);
+        archive = TransactionArchive.of(db);
+        archive.archive(db, Instant.now(), TransactionArchive.DEFAULT_SEGMENT_ENTRIES, msg -> {});
+    }
+
+    private Instant windowStart() {
+        return start.plus(Duration.ofDays(random.nextInt(DAYS - 30)));
+    }
+
+    @Benchmark
+    public List<TransactionHistory.Entry> userWindow() {
+        Instant from = windowStart();
+        return archive.forUser("reader-" + random.nextInt(10_000), from, from.plus(Duration.ofDays(30)));
+    }
+
+    @Benchmark
+    public List<TransactionHistory.Entry> titleWindow() {
+        Instant from = windowStart();
+        return archive.forTitle("978-" + random.nextInt(20_000), from, from.plus(Duration.ofDays(30)));
+    }
+
+    @Benchmark
+    public List<TransactionHistory.Entry> userAllTime() {
+        return archive.forUser("reader-" + random.nextInt(10_000), null, null);
+    }
+}
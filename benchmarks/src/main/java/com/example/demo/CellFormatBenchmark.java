@@ -0,0 +1,40 @@
+package com.example.demo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * MainController.stringOf as the table calls it: five cells per row, one with a fallback.
+ * Lives in com.example.demo because stringOf is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CellFormatBenchmark {
+
+    private final Document row = new Document("code", "C1").append("name", "Title").append("category", "Fiction")
+            .append("status", "Available").append("lastUpdated", "2024-01-01T00:00:00Z");
+
+    @Benchmark
+    public void tableRow(Blackhole bh) {
+        bh.consume(MainController.stringOf(row, "code"));
+        bh.consume(MainController.stringOf(row, "name"));
+        bh.consume(MainController.stringOf(row, "category"));
+        bh.consume(MainController.stringOf(row, "createdDate", "lastUpdated"));
+        bh.consume(MainController.stringOf(row, "status"));
+    }
+}
@@ -5,10 +5,24 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import javafx.scene.Parent;
+import service.AlsoBorrowed;
+import service.BorrowStats;
+import service.CopySelector;
+import service.DriverMetrics;
+import service.MongoClientRegistry;
+import service.TitleResolver;
+import service.TransactionLog;
+import service.UserCache;
 
 public class App extends Application {
     private MainController controller;
 
+    @Override
+    public void init() {
+        // close the shared MongoClients even if the JVM is killed rather than stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(App::shutdownMongo, "mongo-shutdown"));
+    }
+
     @Override
     public void start(Stage primaryStage) throws Exception {
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/MainView.fxml"));
@@ -27,6 +41,28 @@ public class App extends Application {
         });
     }
 
+    @Override
+    public void stop() {
+        if (controller != null) {
+            try { controller.close(); } catch (Exception ignored) {}
+        }
+        shutdownMongo();
+    }
+
+    private static void shutdownMongo() {
+        UserCache.statsAll().forEach((ns, st) -> System.out.println("[user-cache] " + ns + " " + st));
+        TransactionLog.statsAll().forEach((ns, st) -> System.out.println("[txlog] " + ns + " " + st));
+        CopySelector.statsAll().forEach((ns, st) -> System.out.println("[checkout] " + ns + " " + st));
+        TitleResolver.statsAll().forEach((ns, st) -> System.out.println("[titles] " + ns + " " + st));
+        TransactionLog.shutdownAll();
+        BorrowStats.statsAll().forEach((ns, st) -> System.out.println("[stats] " + ns + " " + st));
+        BorrowStats.shutdownAll();
+        AlsoBorrowed.shutdownAll();
+        for (MongoClientRegistry.PoolStats st : MongoClientRegistry.stats()) System.out.println("[pool] " + st);
+        for (String line : DriverMetrics.get().getSummary()) System.out.println("[driver] " + line);
+        MongoClientRegistry.shutdown();
+    }
+
     public static void main(String[] args) {
         launch();
     }
@@ -0,0 +1,46 @@
+package com.example.demo;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import service.MongoClientRegistry;
+import service.TransactionArchive;
+
+/**
+ * Moves transactions older than N days out of the collection into compressed segment files
+ * under ~/.library-app/archive/&lt;db&gt; (or -Dlibrary.archive.dir); history queries keep
+ * returning them. Safe to rerun, and to run periodically (e.g. nightly).
+ *
+ * Usage: ArchiveTransactions [--older-than-days N] [--segment-entries N] [--uri URI] [--db DB]
+ * e.g. mvn exec:java -Dexec.mainClass=com.example.demo.ArchiveTransactions -Dexec.args="--older-than-days 90"
+ */
+public class ArchiveTransactions {
+    public static void main(String[] args) throws Exception {
+        String uri = MyConstants.URI, dbName = "LibraryDB";
+        int days = Integer.getInteger("library.archive.afterDays", 180);
+        int segmentEntries = TransactionArchive.DEFAULT_SEGMENT_ENTRIES;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--older-than-days": days = Integer.parseInt(args[++i]); break;
+                case "--segment-entries": segmentEntries = Integer.parseInt(args[++i]); break;
+                case "--uri": uri = args[++i]; break;
+                case "--db": dbName = args[++i]; break;
+                default: System.out.println("Unknown option " + args[i]); return;
+            }
+        }
+
+        MongoDBConnection conn = new MongoDBConnection(uri, dbName);
+        try {
+            Instant cutoff = Instant.now().minus(Duration.ofDays(days));
+            TransactionArchive archive = TransactionArchive.of(conn.getDatabase());
+            System.out.println("[archive] moving entries before " + cutoff + " to " + TransactionArchive.defaultDirectory(conn.getDatabase()));
+            TransactionArchive.Result r = archive.archive(conn.getDatabase(), cutoff, segmentEntries,
+                    msg -> System.out.println("[archive] " + msg));
+            System.out.println("[archive] " + r);
+            System.out.println("[archive] " + archive.stats());
+        } finally {
+            conn.close();
+            MongoClientRegistry.shutdown();
+        }
+    }
+}
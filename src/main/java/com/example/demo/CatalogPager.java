@@ -0,0 +1,283 @@
+package com.example.demo;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import javafx.collections.ObservableList;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * Keyset-paginated window over a collection, ordered by _id.
+ *
+ * Pages are fetched with {@code _id > last} (or {@code _id < first} when scrolling back) so
+ * every page costs one index range scan regardless of how deep the user has scrolled.
+ * At most maxRows documents are kept in the backing list; loading past that drops rows
+ * from the opposite end of the window.
+ *
+ * Fetching and applying are split so the query can run off the FX thread: the *Page()
+ * methods capture the current bounds and return the blocking query, the apply methods
+ * must be called back on the FX thread with its result.
+ *
+ * After the first page the pager remembers a lastUpdated watermark, so {@link #syncQuery}
+ * only fetches documents changed since then and {@link #applySync} merges them by _id;
+ * rows whose change took them out of the filter are dropped. Deletes by other clients are
+ * picked up by reconciling the window's ids on request.
+ *
+ * lastUpdated is an ISO string written from the writer's clock, and the watermark comes
+ * from this machine's clock, so each sync re-reads SYNC_OVERLAP (5 s) before it. An edit
+ * from a client whose clock runs more than that behind ours can be missed by every sync;
+ * it shows up when the window is next loaded from its first page.
+ */
+public class CatalogPager {
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_MAX_ROWS = 1000;
+
+    /** Fields a table row needs: the visible columns plus what edit, search and sync read. */
+    public static final Bson ROW_FIELDS = Projections.include(
+            "code", "name", "category", "isbn", "status", "borrowedBy", "copiesAvailable", "copiesTotal",
+            "createdDate", "lastUpdated");
+
+    /** lastUpdated is written from client clocks, so each sync re-reads this much history. */
+    private static final Duration SYNC_OVERLAP = Duration.ofSeconds(5);
+
+    /** One fetched page; estimatedTotal is -1 unless this is the first unfiltered page. */
+    public record Page(List<Document> docs, long estimatedTotal, Instant startedAt) {
+        Page(List<Document> docs, long estimatedTotal) { this(docs, estimatedTotal, null); }
+    }
+
+    /**
+     * Changed documents since the watermark that match the filter, the window's rows that
+     * changed and no longer do, plus the window's live ids when reconciling.
+     */
+    public record Sync(List<Document> changed, Set<Object> leftIds, Set<Object> liveIds, Instant startedAt) {}
+
+    private final MongoCollection<Document> collection;
+    private final ObservableList<Document> rows;
+    private final int pageSize;
+    private final int maxRows;
+
+    private Bson filter = new Document();
+    private boolean moreAfter = true;
+    private boolean moreBefore = false;
+    private long estimatedTotal = -1;
+    private Instant watermark;
+
+    public CatalogPager(MongoCollection<Document> collection, ObservableList<Document> rows) {
+        this(collection, rows, DEFAULT_PAGE_SIZE, DEFAULT_MAX_ROWS);
+    }
+
+    public CatalogPager(MongoCollection<Document> collection, ObservableList<Document> rows, int pageSize, int maxRows) {
+        this.collection = collection;
+        this.rows = rows;
+        this.pageSize = pageSize;
+        this.maxRows = Math.max(maxRows, pageSize * 2);
+    }
+
+    /** Query for the first page of the given filter (null = whole collection). */
+    public Callable<Page> firstPage(Bson newFilter) {
+        Bson f = newFilter == null ? new Document() : newFilter;
+        boolean unfiltered = newFilter == null;
+        return () -> {
+            Instant started = Instant.now();
+            // metadata-only count; exact counts would scan the collection
+            long total = unfiltered ? collection.estimatedDocumentCount() : -1;
+            return new Page(fetch(f, Sorts.ascending("_id")), total, started);
+        };
+    }
+
+    /** Replace the window with a first page fetched for newFilter. */
+    public void applyFirst(Bson newFilter, Page page) {
+        filter = newFilter == null ? new Document() : newFilter;
+        estimatedTotal = page.estimatedTotal();
+        moreBefore = false;
+        moreAfter = page.docs().size() == pageSize;
+        watermark = page.startedAt();
+        rows.setAll(page.docs());
+    }
+
+    /** Show a fixed, already ranked result set; paging stops until the next first page. */
+    public void applyResults(List<Document> docs) {
+        filter = new Document();
+        estimatedTotal = -1;
+        moreBefore = false;
+        moreAfter = false;
+        watermark = null;
+        rows.setAll(docs);
+    }
+
+    /** Whether the window can be refreshed incrementally (false for ranked search results). */
+    public boolean canSync() { return watermark != null; }
+
+    /** Query for documents changed since the watermark; reconcile also lists the ids still in the window range. */
+    public Callable<Sync> syncQuery(boolean reconcile) {
+        if (watermark == null) return null;
+        String since = watermark.minus(SYNC_OVERLAP).toString();
+        Bson f = Filters.and(filter, Filters.gte("lastUpdated", since));
+        Object first = rows.isEmpty() ? null : rows.get(0).get("_id");
+        Object last = rows.isEmpty() ? null : rows.get(rows.size() - 1).get("_id");
+        // shown rows edited out of the filter; the filter is a server-side Bson, so ask with $nor
+        Bson left = null;
+        if (!isUnfiltered() && !rows.isEmpty()) {
+            List<Object> shown = new ArrayList<>(rows.size());
+            for (Document d : rows) shown.add(d.get("_id"));
+            left = Filters.and(Filters.in("_id", shown), Filters.gte("lastUpdated", since), Filters.nor(filter));
+        }
+        Bson leftQuery = left;
+        return () -> {
+            Instant started = Instant.now();
+            List<Document> changed = new ArrayList<>();
+            collection.find(f).projection(ROW_FIELDS).sort(Sorts.ascending("lastUpdated")).batchSize(pageSize).into(changed);
+            Set<Object> gone = new HashSet<>();
+            if (leftQuery != null) {
+                for (Document d : collection.find(leftQuery).projection(Projections.include("_id")).batchSize(maxRows)) gone.add(d.get("_id"));
+            }
+            Set<Object> live = null;
+            if (reconcile && first != null) {
+                live = new HashSet<>();
+                Bson range = Filters.and(filter, Filters.gte("_id", first), Filters.lte("_id", last));
+                for (Document d : collection.find(range).projection(Projections.include("_id")).batchSize(maxRows)) live.add(d.get("_id"));
+            }
+            return new Sync(changed, gone, live, started);
+        };
+    }
+
+    /** Merge a sync result into the window; returns how many rows changed. */
+    public int applySync(Sync sync) {
+        int touched = 0;
+        if (!sync.leftIds().isEmpty()) {
+            int before = rows.size();
+            rows.removeIf(d -> sync.leftIds().contains(d.get("_id")));
+            touched += before - rows.size();
+        }
+        if (sync.liveIds() != null) {
+            int before = rows.size();
+            rows.removeIf(d -> !sync.liveIds().contains(d.get("_id")));
+            touched += before - rows.size();
+        }
+        touched += merge(sync.changed(), true); // the sync query already applied the filter
+        watermark = sync.startedAt();
+        return touched;
+    }
+
+    /** Apply pushed changes (e.g. from a change stream); returns how many rows changed. */
+    public int applyChanges(List<Document> upserts, Set<Object> deletes) {
+        int before = rows.size();
+        if (!deletes.isEmpty()) rows.removeIf(d -> deletes.contains(d.get("_id")));
+        boolean unfiltered = watermark != null && isUnfiltered();
+        return (before - rows.size()) + merge(upserts, unfiltered);
+    }
+
+    /**
+     * Whether pushed upserts can leave the window inconsistent: under a filter they replace
+     * rows they may no longer belong in, which only a sync can tell.
+     */
+    public boolean needsSyncAfterChanges() { return watermark != null && !isUnfiltered(); }
+
+    private boolean isUnfiltered() { return filter instanceof Document f && f.isEmpty(); }
+
+    // replace rows by _id; optionally insert new ones that fall inside the window
+    private int merge(List<Document> changed, boolean allowInsert) {
+        int touched = 0;
+        Map<Object, Integer> pos = new HashMap<>();
+        for (int i = 0; i < rows.size(); i++) pos.put(rows.get(i).get("_id"), i);
+        for (Document d : changed) {
+            Object id = d.get("_id");
+            Integer at = pos.get(id);
+            if (at != null) { rows.set(at, d); touched++; continue; }
+            int ins = allowInsert ? insertionPoint(id) : -1;
+            if (ins < 0) continue; // outside the loaded window; paging will reach it
+            rows.add(ins, d);
+            touched++;
+            pos.clear();
+            for (int i = 0; i < rows.size(); i++) pos.put(rows.get(i).get("_id"), i);
+        }
+        return touched;
+    }
+
+    // index to insert id at to keep _id order, or -1 if it falls outside the window
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private int insertionPoint(Object id) {
+        if (!(id instanceof Comparable)) return -1;
+        if (rows.isEmpty()) return moreAfter ? -1 : 0;
+        Object first = rows.get(0).get("_id"), last = rows.get(rows.size() - 1).get("_id");
+        if (first == null || first.getClass() != id.getClass() || last.getClass() != id.getClass()) return -1;
+        Comparable c = (Comparable) id;
+        if (c.compareTo(first) < 0) return moreBefore ? -1 : 0;
+        if (c.compareTo(last) > 0) return moreAfter ? -1 : rows.size();
+        int lo = 0, hi = rows.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (c.compareTo(rows.get(mid).get("_id")) > 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Query for the page after the window, or null if there is none. */
+    public Callable<Page> nextPage() {
+        if (!moreAfter) return null;
+        Bson f = rows.isEmpty() ? filter : Filters.and(filter, Filters.gt("_id", rows.get(rows.size() - 1).get("_id")));
+        return () -> new Page(fetch(f, Sorts.ascending("_id")), -1);
+    }
+
+    /** Append a page from nextPage(); returns how many rows were added. */
+    public int applyNext(Page page) {
+        List<Document> docs = page.docs();
+        moreAfter = docs.size() == pageSize;
+        rows.addAll(docs);
+        int overflow = rows.size() - maxRows;
+        if (overflow > 0) {
+            rows.remove(0, overflow);
+            moreBefore = true;
+        }
+        return docs.size();
+    }
+
+    /** Query for the page before the window, or null if there is none. */
+    public Callable<Page> previousPage() {
+        if (!moreBefore || rows.isEmpty()) return null;
+        Bson f = Filters.and(filter, Filters.lt("_id", rows.get(0).get("_id")));
+        return () -> {
+            List<Document> page = fetch(f, Sorts.descending("_id"));
+            List<Document> ordered = new ArrayList<>(page.size());
+            for (int i = page.size() - 1; i >= 0; i--) ordered.add(page.get(i));
+            return new Page(ordered, -1);
+        };
+    }
+
+    /** Prepend a page from previousPage(); returns how many rows were added. */
+    public int applyPrevious(Page page) {
+        List<Document> docs = page.docs();
+        moreBefore = docs.size() == pageSize;
+        rows.addAll(0, docs);
+        int overflow = rows.size() - maxRows;
+        if (overflow > 0) {
+            rows.remove(rows.size() - overflow, rows.size());
+            moreAfter = true;
+        }
+        return docs.size();
+    }
+
+    public boolean hasMoreAfter() { return moreAfter; }
+    public boolean hasMoreBefore() { return moreBefore; }
+
+    /** Estimated size of the unfiltered collection, or -1 while a filter is active. */
+    public long estimatedTotal() { return estimatedTotal; }
+
+    private List<Document> fetch(Bson f, Bson sort) {
+        List<Document> page = new ArrayList<>(pageSize);
+        collection.find(f).projection(ROW_FIELDS).sort(sort).limit(pageSize).batchSize(pageSize).into(page);
+        return page;
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.demo;
+
+import service.IndexManager;
+import service.InventoryMigration;
+import service.MongoClientRegistry;
+
+/**
+ * Converts one-document-per-copy catalogue entries into inventory entries with copy counts.
+ *
+ * Usage: ConsolidateInventory [uri] [db]
+ * e.g. mvn exec:java -Dexec.mainClass=com.example.demo.ConsolidateInventory
+ */
+public class ConsolidateInventory {
+    public static void main(String[] args) {
+        String uri = args.length > 0 ? args[0] : MyConstants.URI;
+        String dbName = args.length > 1 ? args[1] : MyConstants.DB_NAME;
+
+        MongoDBConnection conn = new MongoDBConnection(uri, dbName);
+        try {
+            IndexManager.ensureIndexes(conn.getDatabase());
+            InventoryMigration.Result r = InventoryMigration.consolidate(conn.getDatabase().getCollection("products"));
+            System.out.println("[inventory] " + r);
+        } finally {
+            conn.close();
+            MongoClientRegistry.shutdown();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.demo;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import service.CollectionExporter;
+import service.MongoClientRegistry;
+
+/**
+ * Streams products, users or transactions to a JSONL or CSV file.
+ *
+ * Usage: ExportCollection &lt;collection&gt; &lt;out-file&gt; [--fields a,b,c] [--since ISO] [--until ISO] [--uri URI] [--db DB]
+ * Format follows the file name (.csv or .jsonl); a trailing .gz enables gzip.
+ * --since/--until filter on lastUpdated (products) or timestamp (transactions).
+ */
+public class ExportCollection {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: ExportCollection <products|users|transactions> <out-file> [--fields a,b] [--since ISO] [--until ISO] [--uri URI] [--db DB]");
+            return;
+        }
+        String collection = args[0];
+        Path out = Path.of(args[1]);
+        List<String> fields = List.of();
+        String since = null, until = null, uri = MyConstants.URI;
+        // users live in the service database, the catalogue in the app database
+        String dbName = "users".equals(collection) ? "LibraryDB" : MyConstants.DB_NAME;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--fields": fields = Arrays.asList(args[i + 1].split(",")); break;
+                case "--since": since = args[i + 1]; break;
+                case "--until": until = args[i + 1]; break;
+                case "--uri": uri = args[i + 1]; break;
+                case "--db": dbName = args[i + 1]; break;
+                default: System.out.println("Unknown option " + args[i]); return;
+            }
+        }
+        String name = out.getFileName().toString().toLowerCase();
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+        CollectionExporter.Format format = name.endsWith(".csv") ? CollectionExporter.Format.CSV : CollectionExporter.Format.JSONL;
+
+        MongoDBConnection conn = new MongoDBConnection(uri, dbName);
+        try {
+            String rangeField = CollectionExporter.defaultRangeField(collection);
+            CollectionExporter.Options opts = new CollectionExporter.Options(format, gzip, fields,
+                    rangeField, bound(rangeField, since), bound(rangeField, until), 5000);
+            CollectionExporter.Result r = CollectionExporter.export(conn.getDatabase().getCollection(collection), out, opts);
+            System.out.println("[export] " + collection + " -> " + out + ": " + r);
+        } finally {
+            conn.close();
+            MongoClientRegistry.shutdown();
+        }
+    }
+
+    // transaction timestamps are BSON dates; catalogue lastUpdated is still an ISO string
+    private static Object bound(String rangeField, String iso) {
+        if (iso == null || !"timestamp".equals(rangeField)) return iso;
+        return Date.from(Instant.parse(iso));
+    }
+}
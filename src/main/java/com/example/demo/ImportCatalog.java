@@ -0,0 +1,51 @@
+package com.example.demo;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import service.CatalogImporter;
+import service.IndexManager;
+import service.MongoClientRegistry;
+
+/**
+ * Bulk catalogue import from the command line.
+ *
+ * Usage: ImportCatalog &lt;file.csv|file.jsonl&gt; [uri] [db]
+ * e.g. mvn exec:java -Dexec.mainClass=com.example.demo.ImportCatalog -Dexec.args="books.csv"
+ */
+public class ImportCatalog {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: ImportCatalog <file.csv|file.jsonl> [uri] [db]");
+            return;
+        }
+        Path file = Path.of(args[0]);
+        if (!Files.isReadable(file)) {
+            System.out.println("Cannot read " + file);
+            return;
+        }
+        String uri = args.length > 1 ? args[1] : MyConstants.URI;
+        String dbName = args.length > 2 ? args[2] : MyConstants.DB_NAME;
+
+        MongoDBConnection conn = new MongoDBConnection(uri, dbName);
+        try {
+            IndexManager.ensureIndexes(conn.getDatabase());
+            if (Files.exists(CatalogImporter.checkpointFile(file)))
+                System.out.println("[import] resuming from " + CatalogImporter.checkpointFile(file));
+            long[] lastPrint = {0};
+            CatalogImporter importer = new CatalogImporter(conn.getDatabase().getCollection("products"), 1000, 4, p -> {
+                long now = System.currentTimeMillis();
+                synchronized (lastPrint) {
+                    if (now - lastPrint[0] < 1000) return;
+                    lastPrint[0] = now;
+                }
+                System.out.println("[import] " + p);
+            });
+            CatalogImporter.Progress done = importer.run(file, CatalogImporter.formatOf(file));
+            System.out.println("[import] done: " + done);
+        } finally {
+            conn.close();
+            MongoClientRegistry.shutdown();
+        }
+    }
+}
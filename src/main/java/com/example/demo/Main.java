@@ -7,6 +7,7 @@ import com.mongodb.client.result.UpdateResult;
 import org.bson.Document;
 
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.combine;
 import static com.mongodb.client.model.Updates.set;
 
 import java.util.Scanner;
@@ -27,6 +28,8 @@ public class Main {
         MongoDBConnection conn = new MongoDBConnection();
         MongoDatabase db = conn.getDatabase();
         MongoCollection<Document> products = db.getCollection("products");
+        service.IndexManager.ensureIndexes(db);
+        for (String line : service.IndexManager.report(db)) System.out.println("[index] " + line);
 
         System.out.println("=== Product Management System ===");
 
@@ -53,6 +56,11 @@ public class Main {
             // Explicitly close resources while classes are available
             System.out.println("[System] Closing MongoDB connection and scanner...");
             try { conn.close(); } catch (Throwable t) { System.err.println("Close error: " + t.getMessage()); }
+            service.TransactionLog.shutdownAll();
+            service.BorrowStats.shutdownAll();
+            service.AlsoBorrowed.shutdownAll();
+            for (service.MongoClientRegistry.PoolStats st : service.MongoClientRegistry.stats()) System.out.println("[pool] " + st);
+            service.MongoClientRegistry.shutdown();
             try { if (scanner != null) scanner.close(); } catch (Throwable ignored) {}
         }
 
@@ -131,23 +139,27 @@ public class Main {
         Double p = readDouble("Enter price: ");
         if (p == null) return;
         Product product = new Product(code, name, p);
-        col.insertOne(product.toDocument());
+        String now = java.time.Instant.now().toString();
+        col.insertOne(product.toDocument().append("createdDate", now).append("lastUpdated", now));
         System.out.println("Inserted: " + product);
     }
 
     private static void listProducts(MongoCollection<Document> col) {
         System.out.println("\n-- Products --");
-        for (Document d : col.find()) {
-            Product p = Product.fromDocument(d);
+        for (Product p : typed(col).find()) {
             System.out.println(p);
         }
     }
 
+    // decodes rows straight into Product, skipping the intermediate Document
+    private static MongoCollection<Product> typed(MongoCollection<Document> col) {
+        return col.withDocumentClass(Product.class).withCodecRegistry(ProductCodec.REGISTRY);
+    }
+
     private static void queryByCode(MongoCollection<Document> col) {
         System.out.print("Enter code: ");
         String code = scanner.nextLine().trim();
-        Document d = col.find(eq("code", code)).first();
-        Product p = Product.fromDocument(d);
+        Product p = typed(col).find(eq("code", code)).first();
         if (p == null) System.out.println("Not found.");
         else System.out.println("Found: " + p);
     }
@@ -162,7 +174,8 @@ public class Main {
         }
         Double newPrice = readDouble("Enter new price: ");
         if (newPrice == null) return;
-        UpdateResult res = col.updateOne(eq("code", code), set("price", newPrice));
+        UpdateResult res = col.updateOne(eq("code", code),
+                combine(set("price", newPrice), set("lastUpdated", java.time.Instant.now().toString())));
         System.out.println("Matched: " + res.getMatchedCount() + ", Modified: " + res.getModifiedCount());
     }
 
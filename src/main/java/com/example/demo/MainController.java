@@ -1,23 +1,39 @@
 package com.example.demo;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
+import javafx.util.Duration;
 import javafx.util.Pair;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.Updates;
+import service.BorrowStats;
+import service.CatalogChangeFeed;
+import service.CatalogSearchIndex;
+import service.DriverMetrics;
+import service.IndexManager;
 import service.LibraryManagementSystem;
 import service.MongoDBConnection;
+import service.TitleResolver;
+import service.TransactionLog;
 import model.User;
 import model.Librarian;
 import model.Reader;
 
 import java.time.Instant;
+import java.util.concurrent.Callable;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -29,11 +45,23 @@ public class MainController {
 
     @FXML private Button addButton, updateButton, deleteButton, userMgmtButton, loginButton;
     @FXML private Button btnBorrow, btnReturn;
-    @FXML private Label userLabel;
+    @FXML private Label userLabel, rowsLabel;
+    @FXML private ProgressIndicator busyIndicator;
+    @FXML private CheckBox liveCheck;
+    @FXML private TitledPane perfPane;
+    @FXML private Label poolLabel;
+    @FXML private TableView<DriverMetrics.CommandStats> perfTable;
+    @FXML private TableColumn<DriverMetrics.CommandStats, String> perfCommand, perfCount, perfFailures, perfMean,
+            perfP50, perfP99, perfMax, perfSent, perfReceived;
 
     private MongoDBConnection conn;
     private MongoCollection<Document> collection;
+    private CatalogPager pager;
     private ObservableList<Document> data = FXCollections.observableArrayList();
+    private final UiTasks tasks = new UiTasks();
+    private boolean pageLoading;
+    private CatalogChangeFeed feed;
+    private Timeline perfRefresh;
 
     private User currentUser;
 
@@ -48,19 +76,95 @@ public class MainController {
         colName.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(stringOf(c.getValue(), "name")));
         colCategory.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(stringOf(c.getValue(), "category")));
         colDateAdded.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(stringOf(c.getValue(), "createdDate", "lastUpdated")));
-        colStatus.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(stringOf(c.getValue(), "status")));
+        colStatus.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(statusOf(c.getValue())));
 
         table.setItems(data);
+        table.skinProperty().addListener((obs, o, n) -> javafx.application.Platform.runLater(this::hookInfiniteScroll));
+        searchField.textProperty().addListener((obs, o, n) -> onSearch());
+        if (busyIndicator != null) busyIndicator.visibleProperty().bind(tasks.inFlightProperty().greaterThan(0));
         applyRoleVisibility("anonymous");
+        initPerformancePanel();
     }
 
-    private String stringOf(Document d, String key) {
+    // driver metrics, refreshed once a second while the Performance pane is open
+    private void initPerformancePanel() {
+        if (perfTable == null) return;
+        perfCommand.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(c.getValue().command()));
+        perfCount.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(Long.toString(c.getValue().count())));
+        perfFailures.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(Long.toString(c.getValue().failures())));
+        perfMean.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(String.format("%.2f", c.getValue().meanMillis())));
+        perfP50.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(String.format("%.2f", c.getValue().p50Millis())));
+        perfP99.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(String.format("%.2f", c.getValue().p99Millis())));
+        perfMax.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(String.format("%.2f", c.getValue().maxMillis())));
+        perfSent.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(String.format("%.1f", c.getValue().bytesSent() / 1024.0)));
+        perfReceived.setCellValueFactory(c -> new javafx.beans.property.SimpleStringProperty(String.format("%.1f", c.getValue().bytesReceived() / 1024.0)));
+        perfRefresh = new Timeline(new KeyFrame(Duration.seconds(1), e -> refreshPerformance()));
+        perfRefresh.setCycleCount(Animation.INDEFINITE);
+        perfPane.expandedProperty().addListener((obs, o, open) -> {
+            if (open) { refreshPerformance(); perfRefresh.play(); }
+            else perfRefresh.stop();
+        });
+    }
+
+    private void refreshPerformance() {
+        // snapshots only read counters, so this is cheap enough for the FX thread
+        perfTable.getItems().setAll(DriverMetrics.get().commands());
+        poolLabel.setText("Pool: " + DriverMetrics.get().pool());
+    }
+
+    @FXML private void onResetMetrics() {
+        DriverMetrics.get().reset();
+        refreshPerformance();
+    }
+
+    // load the next/previous page when the vertical scrollbar reaches either end
+    private void hookInfiniteScroll() {
+        for (javafx.scene.Node n : table.lookupAll(".scroll-bar")) {
+            if (!(n instanceof ScrollBar sb) || sb.getOrientation() != javafx.geometry.Orientation.VERTICAL) continue;
+            sb.valueProperty().addListener((obs, o, v) -> {
+                if (pager == null) return;
+                if (v.doubleValue() >= sb.getMax() && pager.hasMoreAfter()) loadPage(true);
+                else if (v.doubleValue() <= sb.getMin() && pager.hasMoreBefore()) loadPage(false);
+            });
+        }
+    }
+
+    private void loadPage(boolean forward) {
+        if (pageLoading) return;
+        CatalogPager p = pager;
+        Callable<CatalogPager.Page> query = forward ? p.nextPage() : p.previousPage();
+        if (query == null) return;
+        pageLoading = true;
+        tasks.submitLatest("page", query, page -> {
+            pageLoading = false;
+            if (p != pager) return;
+            Object anchor = data.isEmpty() ? null : data.get(forward ? data.size() - 1 : 0);
+            int added = forward ? p.applyNext(page) : p.applyPrevious(page);
+            if (added > 0 && anchor != null) table.scrollTo(Math.max(0, data.indexOf(anchor) - (forward ? 1 : 0)));
+            updateRowsLabel();
+        }, e -> { pageLoading = false; showError(e); });
+    }
+
+    private void updateRowsLabel() {
+        if (rowsLabel == null || pager == null) return;
+        long total = pager.estimatedTotal();
+        rowsLabel.setText(data.size() + " rows loaded" + (total >= 0 ? " of ~" + total : ""));
+    }
+
+    static String stringOf(Document d, String key) {
         if (d == null) return "";
         Object v = d.get(key);
         return v == null ? "" : String.valueOf(v);
     }
 
-    private String stringOf(Document d, String key, String fallback) {
+    // inventory entries show their copy count; single-copy entries their status
+    static String statusOf(Document d) {
+        if (d == null) return "";
+        if (!LibraryManagementSystem.isInventory(d)) return stringOf(d, "status");
+        return stringOf(d, "copiesAvailable") + " of " + stringOf(d, "copiesTotal") + " available";
+    }
+
+    static String stringOf(Document d, String key, String fallback) {
         if (d == null) return "";
         Object v = d.get(key);
         if (v != null) return String.valueOf(v);
@@ -68,36 +172,167 @@ public class MainController {
         return f == null ? "" : String.valueOf(f);
     }
 
+    private record Connected(MongoDBConnection conn, MongoCollection<Document> collection, CatalogPager pager, CatalogPager.Page first) {}
+
     @FXML
     private void onConnect() {
-        try {
-            close();
-            conn = new MongoDBConnection(uriField.getText(), dbField.getText());
-            collection = conn.getDatabase().getCollection(collectionField.getText());
-            loadData();
+        String uri = uriField.getText(), dbName = dbField.getText(), colName = collectionField.getText();
+        MongoDBConnection old = conn;
+        stopLiveUpdates();
+        conn = null; collection = null; pager = null;
+        tasks.cancel("catalog"); tasks.cancel("page"); pageLoading = false;
+        tasks.submitLatest("connect", () -> {
+            if (old != null) old.close();
+            MongoDBConnection c = new MongoDBConnection(uri, dbName);
+            try {
+                MongoCollection<Document> col = c.getDatabase().getCollection(colName);
+                IndexManager.ensureIndexes(c.getDatabase());
+                CatalogPager p = new CatalogPager(col, data);
+                return new Connected(c, col, p, p.firstPage(null).call());
+            } catch (Exception e) {
+                c.close();
+                throw e;
+            }
+        }, r -> {
+            conn = r.conn(); collection = r.collection(); pager = r.pager();
+            pager.applyFirst(null, r.first());
+            updateRowsLabel();
+            buildSearchIndex();
+            if (liveCheck != null && liveCheck.isSelected()) startLiveUpdates();
             showAlert(Alert.AlertType.INFORMATION, "Connected", "Connection successful");
-        } catch (Exception e) {
-            showAlert(Alert.AlertType.ERROR, "Connection failed", e.getMessage());
+        }, e -> showAlert(Alert.AlertType.ERROR, "Connection failed", e.getMessage()));
+    }
+
+    private void buildSearchIndex() {
+        CatalogSearchIndex idx = CatalogSearchIndex.forCollection(collection);
+        if (idx.isReady()) return;
+        MongoCollection<Document> col = collection;
+        tasks.submit("buildSearchIndex", () -> { idx.build(col); return idx.size(); },
+                n -> System.out.println("[search] indexed " + n + " documents"), this::showError);
+    }
+
+    private CatalogSearchIndex searchIndex() {
+        return collection == null ? null : CatalogSearchIndex.ifReady(collection);
+    }
+
+    // after a write: only fetch what changed since the last load (live updates deliver it anyway)
+    public void loadData() { if (feed == null) sync(false); }
+
+    @FXML private void onLiveToggle() {
+        if (liveCheck.isSelected()) startLiveUpdates(); else stopLiveUpdates();
+    }
+
+    private void startLiveUpdates() {
+        if (collection == null || feed != null) return;
+        CatalogPager p = pager;
+        MongoCollection<Document> col = collection;
+        CatalogChangeFeed[] self = new CatalogChangeFeed[1];
+        feed = self[0] = new CatalogChangeFeed(col, CatalogChangeFeed.defaultTokenFile(col), 200,
+                batch -> javafx.application.Platform.runLater(() -> applyLiveBatch(p, batch)),
+                err -> {
+                    // anything else is retried by the feed from its saved resume token
+                    if (!CatalogChangeFeed.isUnrecoverable(err)) return;
+                    javafx.application.Platform.runLater(() -> {
+                        if (feed != self[0]) return;
+                        // typically a standalone server: change streams need a replica set
+                        stopLiveUpdates();
+                        if (liveCheck != null) liveCheck.setSelected(false);
+                        showAlert(Alert.AlertType.ERROR, "Live updates stopped", err.getMessage());
+                    });
+                });
+        feed.start();
+    }
+
+    private void stopLiveUpdates() {
+        if (feed != null) { feed.close(); feed = null; }
+    }
+
+    private void applyLiveBatch(CatalogPager p, CatalogChangeFeed.Batch batch) {
+        if (p != pager || feed == null) return;
+        if (batch.reset()) { onSearch(); return; }
+        CatalogSearchIndex idx = searchIndex();
+        if (idx != null) {
+            for (Document d : batch.upserts()) idx.put(d);
+            for (Object id : batch.deletes()) idx.remove(id);
         }
+        TitleResolver titles = TitleResolver.forCollection(collection);
+        for (Document d : batch.upserts()) titles.put(d);
+        for (Object id : batch.deletes()) titles.remove(id);
+        p.applyChanges(batch.upserts(), batch.deletes());
+        // an edit may have taken a row out of the filter; the sync query drops it
+        if (!batch.upserts().isEmpty() && p.needsSyncAfterChanges()) sync(false);
+        updateRowsLabel();
+    }
+
+    private void sync(boolean reconcile) {
+        if (pager == null) return;
+        CatalogPager p = pager;
+        Callable<CatalogPager.Sync> query = p.syncQuery(reconcile);
+        if (query == null) { onSearch(); return; }
+        tasks.submitLatest("catalog", query, result -> {
+            if (p != pager) return;
+            p.applySync(result);
+            updateRowsLabel();
+        }, this::showError);
     }
 
-    public void loadData() {
-        if (collection == null) return;
-        data.clear();
-        for (Document d : collection.find()) data.add(d);
+    // reload the first page; a newer refresh/search cancels this one
+    private void refresh(Bson filter) {
+        if (pager == null) return;
+        CatalogPager p = pager;
+        tasks.cancel("page"); pageLoading = false;
+        tasks.submitLatest("catalog", p.firstPage(filter), page -> {
+            if (p != pager) return;
+            p.applyFirst(filter, page);
+            updateRowsLabel();
+        }, this::showError);
     }
 
-    @FXML private void onRefresh() { loadData(); }
+    @FXML private void onRefresh() { sync(true); }
 
     @FXML private void onSearch() {
-        if (collection == null) return;
+        if (pager == null) return;
         String q = searchField.getText().trim();
-        if (q.isEmpty()) { loadData(); return; }
-        data.clear();
-        for (Document d : collection.find(Filters.or(Filters.regex("code", q, "i"), Filters.regex("name", q, "i"))))
-            data.add(d);
+        if (q.isEmpty()) { refresh(null); return; }
+        CatalogSearchIndex idx = searchIndex();
+        if (idx == null) {
+            // index still building: fall back to the scanning query
+            refresh(Filters.or(Filters.regex("code", q, "i"), Filters.regex("name", q, "i")));
+            return;
+        }
+        CatalogPager p = pager;
+        MongoCollection<Document> col = collection;
+        tasks.cancel("page"); pageLoading = false;
+        tasks.submitLatest("catalog", () -> {
+            List<Object> ids = idx.search(q, CatalogPager.DEFAULT_PAGE_SIZE);
+            Map<Object, Document> byId = new HashMap<>();
+            for (Document d : col.find(Filters.in("_id", ids)).projection(CatalogPager.ROW_FIELDS)) byId.put(d.get("_id"), d);
+            List<Document> ranked = new ArrayList<>(ids.size());
+            for (Object id : ids) { Document d = byId.get(id); if (d != null) ranked.add(d); }
+            return ranked;
+        }, ranked -> {
+            if (p != pager) return;
+            p.applyResults(ranked);
+            updateRowsLabel();
+        }, this::showError);
+    }
+
+    // open a service connection for the duration of one call; runs on a worker thread
+    private interface LibraryCall<T> { T apply(LibraryManagementSystem lms) throws Exception; }
+
+    private <T> Callable<T> library(String uri, String dbName, LibraryCall<T> call) {
+        return () -> {
+            MongoDBConnection svcConn = (uri == null) ? new MongoDBConnection() : new MongoDBConnection(uri, dbName);
+            try {
+                return call.apply(new LibraryManagementSystem(svcConn.getDatabase()));
+            } finally {
+                svcConn.close();
+            }
+        };
     }
 
+    private void showError(Throwable e) { showAlert(Alert.AlertType.ERROR, "Error", e.getMessage()); }
+
     @FXML
     private void onLogin() {
         Dialog<Pair<String, String>> dialog = new Dialog<>();
@@ -113,24 +348,16 @@ public class MainController {
         dialog.setResultConverter(bt -> (bt == ButtonType.OK) ? new Pair<>(username.getText(), password.getText()) : null);
 
         Optional<Pair<String, String>> result = dialog.showAndWait();
-        result.ifPresent(creds -> {
-            MongoDBConnection svcConn = null;
-            try {
-                svcConn = new MongoDBConnection();
-                LibraryManagementSystem lms = new LibraryManagementSystem(svcConn.getDatabase());
-                User user = lms.login(creds.getKey(), creds.getValue());
-                if (user != null) {
-                    initSession(user);
-                    showAlert(Alert.AlertType.INFORMATION, "Welcome", "Hello " + user.getUsername() + " (" + user.getRole() + ")");
-                } else {
-                    showAlert(Alert.AlertType.ERROR, "Login failed", "Invalid credentials");
-                }
-            } catch (Exception e) {
-                showAlert(Alert.AlertType.ERROR, "Error", e.getMessage());
-            } finally {
-                try { if (svcConn != null) svcConn.close(); } catch (Exception ignored) {}
-            }
-        });
+        result.ifPresent(creds -> tasks.submit("login",
+                library(null, null, lms -> lms.login(creds.getKey(), creds.getValue())),
+                user -> {
+                    if (user != null) {
+                        initSession(user);
+                        showAlert(Alert.AlertType.INFORMATION, "Welcome", "Hello " + user.getUsername() + " (" + user.getRole() + ")");
+                    } else {
+                        showAlert(Alert.AlertType.ERROR, "Login failed", "Invalid credentials");
+                    }
+                }, this::showError));
     }
 
     public void initSession(User user) {
@@ -194,8 +421,13 @@ public class MainController {
             doc.append("lastUpdated", now);
             if (!doc.containsKey("status")) doc.append("status", "Available");
             doc.remove("price");
-            collection.insertOne(doc);
-            loadData();
+            MongoCollection<Document> col = collection;
+            tasks.submit("add", () -> col.insertOne(doc), r -> {
+                CatalogSearchIndex idx = searchIndex();
+                if (idx != null) idx.put(doc); // insertOne filled in _id
+                TitleResolver.forCollection(col).put(doc);
+                loadData();
+            }, this::showError);
         });
     }
 
@@ -210,16 +442,27 @@ public class MainController {
             String now = Instant.now().toString();
             doc.append("lastUpdated", now);
             doc.remove("price");
-            collection.updateOne(Filters.eq("_id", sel.get("_id")),
-                    Updates.combine(
-                            Updates.set("name", doc.getString("name")),
-                            Updates.set("category", doc.getString("category")),
-                            Updates.set("isbn", doc.getString("isbn")),
-                            Updates.set("status", doc.getString("status")),
-                            Updates.set("lastUpdated", doc.getString("lastUpdated")),
-                            Updates.set("borrowedBy", doc.get("borrowedBy"))
-                    ));
-            loadData();
+            MongoCollection<Document> col = collection;
+            List<Bson> sets = new ArrayList<>(List.of(
+                    Updates.set("name", doc.getString("name")),
+                    Updates.set("category", doc.getString("category")),
+                    Updates.set("isbn", doc.getString("isbn")),
+                    Updates.set("lastUpdated", doc.getString("lastUpdated"))));
+            Bson target = Filters.eq("_id", sel.get("_id"));
+            // an inventory entry's loans only change through borrow and return
+            if (!LibraryManagementSystem.isInventory(sel)) {
+                sets.add(Updates.set("status", doc.getString("status")));
+                sets.add(Updates.set("borrowedBy", doc.get("borrowedBy")));
+                target = Filters.and(target, Filters.exists("copiesTotal", false));
+            }
+            Bson filter = target;
+            tasks.submit("update", () -> col.updateOne(filter, Updates.combine(sets)), r -> {
+                CatalogSearchIndex idx = searchIndex();
+                doc.append("_id", sel.get("_id"));
+                if (idx != null) idx.put(doc);
+                TitleResolver.forCollection(col).put(doc);
+                loadData();
+            }, this::showError);
         });
     }
 
@@ -229,8 +472,14 @@ public class MainController {
         if (sel == null) { showAlert(Alert.AlertType.WARNING, "No selection", "Select a row first"); return; }
         Alert cf = new Alert(Alert.AlertType.CONFIRMATION, "Delete " + sel.getString("name") + "?", ButtonType.YES, ButtonType.NO);
         if (cf.showAndWait().orElse(ButtonType.NO) == ButtonType.YES) {
-            collection.deleteOne(Filters.eq("_id", sel.get("_id")));
-            loadData();
+            MongoCollection<Document> col = collection;
+            tasks.submit("delete", () -> col.deleteOne(Filters.eq("_id", sel.get("_id"))), r -> {
+                CatalogSearchIndex idx = searchIndex();
+                if (idx != null) idx.remove(sel.get("_id"));
+                TitleResolver.forCollection(col).remove(sel.get("_id"));
+                data.remove(sel); // our own delete; other clients' are reconciled on Refresh
+                loadData();
+            }, this::showError);
         }
     }
 
@@ -242,19 +491,15 @@ public class MainController {
         dlg.setTitle("Borrow Book");
         dlg.setHeaderText("Enter Book Title to borrow");
         Optional<String> res = dlg.showAndWait();
-        res.ifPresent(title -> {
-            MongoDBConnection svcConn = null;
-            try {
-                // FIX: Use UI connection fields instead of default LibraryDB
-                svcConn = new MongoDBConnection(uriField.getText(), dbField.getText());
-                LibraryManagementSystem lms = new LibraryManagementSystem(svcConn.getDatabase());
-                boolean ok = lms.borrowBook(title.trim(), currentUser.getUsername());
-                showAlert(ok ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, ok ? "Borrowed" : "Failed",
-                        ok ? "Book borrowed successfully." : "No available book with that title.");
-                if (ok) loadData();
-            } catch (Exception e) { showAlert(Alert.AlertType.ERROR, "Error", e.getMessage()); }
-            finally { try { if (svcConn != null) svcConn.close(); } catch (Exception ignored) {} }
-        });
+        String username = currentUser.getUsername();
+        // FIX: Use UI connection fields instead of default LibraryDB
+        res.ifPresent(title -> tasks.submit("borrow",
+                library(uriField.getText(), dbField.getText(), lms -> lms.borrowBook(title.trim(), username)),
+                ok -> {
+                    showAlert(ok ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, ok ? "Borrowed" : "Failed",
+                            ok ? "Book borrowed successfully." : "No available book with that title.");
+                    if (ok) loadData();
+                }, this::showError));
     }
 
     @FXML private void onReturn() {
@@ -265,19 +510,15 @@ public class MainController {
         dlg.setTitle("Return Book");
         dlg.setHeaderText("Enter Book Title to return");
         Optional<String> res = dlg.showAndWait();
-        res.ifPresent(title -> {
-            MongoDBConnection svcConn = null;
-            try {
-                // FIX: Use UI connection fields instead of default LibraryDB
-                svcConn = new MongoDBConnection(uriField.getText(), dbField.getText());
-                LibraryManagementSystem lms = new LibraryManagementSystem(svcConn.getDatabase());
-                boolean ok = lms.returnBook(title.trim(), currentUser.getUsername());
-                showAlert(ok ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, ok ? "Returned" : "Failed",
-                        ok ? "Book returned successfully." : "Return failed (no matching borrowed book found for you).");
-                if (ok) loadData();
-            } catch (Exception e) { showAlert(Alert.AlertType.ERROR, "Error", e.getMessage()); }
-            finally { try { if (svcConn != null) svcConn.close(); } catch (Exception ignored) {} }
-        });
+        String username = currentUser.getUsername();
+        // FIX: Use UI connection fields instead of default LibraryDB
+        res.ifPresent(title -> tasks.submit("return",
+                library(uriField.getText(), dbField.getText(), lms -> lms.returnBook(title.trim(), username)),
+                ok -> {
+                    showAlert(ok ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, ok ? "Returned" : "Failed",
+                            ok ? "Book returned successfully." : "Return failed (no matching borrowed book found for you).");
+                    if (ok) loadData();
+                }, this::showError));
     }
 
     @FXML private void onUserManagement() {
@@ -299,17 +540,9 @@ public class MainController {
 
         dlg.getDialogPane().setContent(g);
 
-        Runnable loadUsers = () -> {
-            MongoDBConnection svcConn = null;
-            try {
-                svcConn = new MongoDBConnection();
-                LibraryManagementSystem lms = new LibraryManagementSystem(svcConn.getDatabase());
-                List<String> all = lms.listAllUsers().stream().map(User::getUsername).collect(Collectors.toList());
-                usersList.getItems().setAll(all);
-            } catch (Exception ex) {
-                showAlert(Alert.AlertType.ERROR, "Error", ex.getMessage());
-            } finally { try { if (svcConn != null) svcConn.close(); } catch (Exception ignored) {} }
-        };
+        Runnable loadUsers = () -> tasks.submitLatest("users",
+                library(null, null, lms -> lms.listUserSummaries().stream().map(LibraryManagementSystem.UserSummary::username).collect(Collectors.toList())),
+                (List<String> all) -> usersList.getItems().setAll(all), this::showError);
 
         btnRefresh.setOnAction(ev -> loadUsers.run());
 
@@ -319,15 +552,10 @@ public class MainController {
             if (currentUser != null && sel.equals(currentUser.getUsername())) { showAlert(Alert.AlertType.WARNING, "Invalid", "You cannot delete yourself"); return; }
             Alert cf = new Alert(Alert.AlertType.CONFIRMATION, "Delete user " + sel + "?", ButtonType.YES, ButtonType.NO);
             if (cf.showAndWait().orElse(ButtonType.NO) == ButtonType.YES) {
-                MongoDBConnection svcConn = null;
-                try {
-                    svcConn = new MongoDBConnection();
-                    LibraryManagementSystem lms = new LibraryManagementSystem(svcConn.getDatabase());
-                    boolean ok = lms.deleteUserByUsername(sel);
+                tasks.submit("deleteUser", library(null, null, lms -> lms.deleteUserByUsername(sel)), ok -> {
                     showAlert(ok ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING, ok ? "Deleted" : "Failed", ok ? "User deleted" : "Delete failed");
                     loadUsers.run();
-                } catch (Exception ex) { showAlert(Alert.AlertType.ERROR, "Error", ex.getMessage()); }
-                finally { try { if (svcConn != null) svcConn.close(); } catch (Exception ignored) {} }
+                }, this::showError);
             }
         });
 
@@ -356,22 +584,19 @@ public class MainController {
                 String sn = studentNumber.getText().trim();
                 if (u.isEmpty() || p.isEmpty() || role == null) { showAlert(Alert.AlertType.WARNING, "Invalid", "Provide username, password, role"); return; }
 
-                MongoDBConnection svcConn = null;
-                try {
-                    svcConn = new MongoDBConnection();
-                    LibraryManagementSystem lms = new LibraryManagementSystem(svcConn.getDatabase());
+                if (role.equalsIgnoreCase("student") && sn.isEmpty()) { showAlert(Alert.AlertType.WARNING, "Invalid", "studentNumber required for student"); return; }
+
+                tasks.submit("createUser", library(null, null, lms -> {
                     switch (role.toLowerCase()) {
                         case "librarian": lms.addUser(new Librarian("u-"+u, u, p)); break;
-                        case "student":
-                            if (sn.isEmpty()) { showAlert(Alert.AlertType.WARNING, "Invalid", "studentNumber required for student"); return; }
-                            lms.addStudent("u-"+u, u, p, sn);
-                            break;
+                        case "student": lms.addStudent("u-"+u, u, p, sn); break;
                         default: lms.addUser(new Reader("u-"+u, u, p)); break;
                     }
-                    showAlert(Alert.AlertType.INFORMATION, "Created", "User created: " + u + " (" + role + ")");
+                    return u;
+                }), created -> {
+                    showAlert(Alert.AlertType.INFORMATION, "Created", "User created: " + created + " (" + role + ")");
                     loadUsers.run();
-                } catch (Exception ex) { showAlert(Alert.AlertType.ERROR, "Error", ex.getMessage()); }
-                finally { try { if (svcConn != null) svcConn.close(); } catch (Exception ignored) {} }
+                }, this::showError);
             }
         });
 
@@ -388,6 +613,8 @@ public class MainController {
         TextField code = new TextField(), name = new TextField(), cat = new TextField(), isbn = new TextField();
         ChoiceBox<String> statusBox = new ChoiceBox<>(FXCollections.observableArrayList("Available", "Borrowed"));
         TextField borrowedBy = new TextField(); borrowedBy.setPromptText("borrowedBy (optional)");
+        TextField copies = new TextField(); copies.setPromptText("Copies (optional)");
+        copies.setTextFormatter(new TextFormatter<String>(c -> c.getControlNewText().matches("\\d{0,5}") ? c : null));
 
         code.setPromptText("Code"); name.setPromptText("Name"); cat.setPromptText("Category"); isbn.setPromptText("ISBN");
         statusBox.getSelectionModel().select("Available");
@@ -400,7 +627,12 @@ public class MainController {
             String st = stringOf(template, "status");
             if (!st.isEmpty()) statusBox.getSelectionModel().select(st);
             borrowedBy.setText(stringOf(template, "borrowedBy"));
+            // counts change with every checkout, so they are not edited here
+            copies.setText(stringOf(template, "copiesTotal")); copies.setDisable(true);
         }
+        // an inventory entry has no single status or borrower; its loans come from checkouts
+        statusBox.disableProperty().bind(copies.textProperty().isNotEmpty());
+        borrowedBy.disableProperty().bind(copies.textProperty().isNotEmpty());
 
         g.addRow(0, new Label("Code:"), code);
         g.addRow(1, new Label("Name:"), name);
@@ -408,18 +640,26 @@ public class MainController {
         g.addRow(3, new Label("ISBN:"), isbn);
         g.addRow(4, new Label("Status:"), statusBox);
         g.addRow(5, new Label("Borrowed By:"), borrowedBy);
+        g.addRow(6, new Label("Copies:"), copies);
 
         dialog.getDialogPane().setContent(g);
 
         dialog.setResultConverter(bt -> {
             if (bt == ButtonType.OK) {
                 Document d = new Document();
-                d.append("code", code.getText())
-                 .append("name", name.getText())
+                // code is optional; a blank one is left out rather than stored as ""
+                if (!code.getText().isBlank()) d.append("code", code.getText().trim());
+                d.append("name", name.getText())
                  .append("category", cat.getText())
                  .append("isbn", isbn.getText())
                  .append("status", statusBox.getValue())
                  .append("borrowedBy", borrowedBy.getText().isEmpty() ? null : borrowedBy.getText());
+                if (template == null && !copies.getText().isEmpty() && Integer.parseInt(copies.getText()) > 0) {
+                    int n = Integer.parseInt(copies.getText());
+                    d.append("copiesTotal", n).append("copiesAvailable", n).append("activeLoans", new ArrayList<>());
+                    d.put("status", "Available");
+                    d.remove("borrowedBy");
+                }
                 return d;
             }
             return null;
@@ -432,5 +672,12 @@ public class MainController {
         Alert a = new Alert(type); a.setTitle(title); a.setHeaderText(null); a.setContentText(msg); a.showAndWait();
     }
 
-    public void close() { if (conn != null) conn.close(); }
+    public void close() {
+        if (perfRefresh != null) perfRefresh.stop();
+        stopLiveUpdates();
+        tasks.shutdown();
+        TransactionLog.flushAll();
+        BorrowStats.flushAll();
+        if (conn != null) conn.close();
+    }
 }
\ No newline at end of file
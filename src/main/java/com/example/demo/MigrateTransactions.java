@@ -0,0 +1,39 @@
+package com.example.demo;
+
+import service.MongoClientRegistry;
+import service.TransactionMigration;
+
+/**
+ * Rewrites string transaction timestamps as BSON dates and, with --timeseries, moves the log
+ * into a time-series collection.
+ *
+ * Usage: MigrateTransactions [--timeseries] [--batch N] [--uri URI] [--db DB]
+ * e.g. mvn exec:java -Dexec.mainClass=com.example.demo.MigrateTransactions -Dexec.args="--timeseries"
+ */
+public class MigrateTransactions {
+    public static void main(String[] args) {
+        String uri = MyConstants.URI, dbName = "LibraryDB";
+        boolean timeSeries = false;
+        int batch = 1000;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--timeseries": timeSeries = true; break;
+                case "--batch": batch = Integer.parseInt(args[++i]); break;
+                case "--uri": uri = args[++i]; break;
+                case "--db": dbName = args[++i]; break;
+                default: System.out.println("Unknown option " + args[i]); return;
+            }
+        }
+
+        MongoDBConnection conn = new MongoDBConnection(uri, dbName);
+        try {
+            TransactionMigration.Result r = TransactionMigration.run(conn.getDatabase(), timeSeries, batch,
+                    msg -> System.out.println("[migrate] " + msg));
+            System.out.println("[migrate] " + r);
+            if (r.copied() > 0) System.out.println("[migrate] old entries kept in " + TransactionMigration.PLAIN_COPY + "; drop it once verified");
+        } finally {
+            conn.close();
+            MongoClientRegistry.shutdown();
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package com.example.demo;
 
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
+import service.MongoClientRegistry;
 
 public class MongoDBConnection {
-    private MongoClient client;
+    private MongoClientRegistry.Lease lease;
     private MongoDatabase database;
 
     // Constructor mặc định (cho code cũ nếu cần)
@@ -15,8 +14,8 @@ public class MongoDBConnection {
 
     // Constructor mới (Cho giao diện JavaFX)
     public MongoDBConnection(String uri, String dbName) {
-        this.client = MongoClients.create(uri);
-        this.database = client.getDatabase(dbName);
+        this.lease = MongoClientRegistry.acquire(uri, dbName);
+        this.database = lease.getDatabase();
     }
 
     public MongoDatabase getDatabase() {
@@ -24,6 +23,6 @@ public class MongoDBConnection {
     }
 
     public void close() {
-        if (client != null) client.close();
+        if (lease != null) MongoClientRegistry.release(lease);
     }
-}
\ No newline at end of file
+}
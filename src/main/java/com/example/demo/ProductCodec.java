@@ -0,0 +1,60 @@
+package com.example.demo;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import model.Codecs;
+
+/** Decodes products straight from BSON; same defaults as {@link Product#fromDocument}. */
+public class ProductCodec implements Codec<Product> {
+
+    public static final CodecRegistry REGISTRY = CodecRegistries.fromRegistries(
+            CodecRegistries.fromCodecs(new ProductCodec()), Codecs.REGISTRY);
+
+    @Override
+    public Product decode(BsonReader reader, DecoderContext ctx) {
+        Product p = new Product();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            BsonType t = reader.getCurrentBsonType();
+            switch (name) {
+                case "code": if (t == BsonType.STRING) p.setCode(reader.readString()); else reader.skipValue(); break;
+                case "name": if (t == BsonType.STRING) p.setName(reader.readString()); else reader.skipValue(); break;
+                case "price":
+                    switch (t) {
+                        case DOUBLE: p.setPrice(reader.readDouble()); break;
+                        case INT32: p.setPrice(reader.readInt32()); break;
+                        case INT64: p.setPrice(reader.readInt64()); break;
+                        case DECIMAL128: p.setPrice(reader.readDecimal128().doubleValue()); break;
+                        default: reader.skipValue();
+                    }
+                    break;
+                default: reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return p;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Product p, EncoderContext ctx) {
+        writer.writeStartDocument();
+        if (p.getCode() != null) writer.writeString("code", p.getCode());
+        if (p.getName() == null) writer.writeNull("name");
+        else writer.writeString("name", p.getName());
+        writer.writeDouble("price", p.getPrice());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<Product> getEncoderClass() {
+        return Product.class;
+    }
+}
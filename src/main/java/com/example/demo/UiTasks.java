@@ -0,0 +1,131 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
+
+/**
+ * Runs blocking MongoDB work on virtual threads and hands results back on the FX thread.
+ *
+ * All public methods must be called from the FX thread. Tasks submitted under the same key
+ * with {@link #submitLatest} supersede each other: the older one is cancelled and its
+ * result, if it still arrives, is dropped. A running task is not interrupted, since the
+ * driver closes a pooled connection whose I/O is interrupted; it finishes its query and
+ * the connection goes back to the pool.
+ */
+public class UiTasks {
+    private static final long SLOW_MILLIS = 250;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Future<?>> latest = new HashMap<>();
+    private final SimpleIntegerProperty inFlight = new SimpleIntegerProperty();
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+
+    /** Number of tasks submitted but not yet delivered; drives the busy indicator. */
+    public ReadOnlyIntegerProperty inFlightProperty() { return inFlight; }
+
+    public <T> Future<?> submit(String op, Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        return start(op, null, work, onSuccess, onError);
+    }
+
+    /** Like submit, but cancels whatever is still running under the same key. */
+    public <T> Future<?> submitLatest(String key, Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        cancel(key);
+        return start(key, key, work, onSuccess, onError);
+    }
+
+    public void cancel(String key) {
+        Future<?> prev = latest.remove(key);
+        if (prev != null) prev.cancel(false);
+    }
+
+    public List<String> latencySummary() {
+        List<String> out = new ArrayList<>();
+        latencies.forEach((op, l) -> out.add(op + " " + l));
+        return out;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        for (String line : latencySummary()) System.out.println("[ui-op] " + line);
+    }
+
+    private <T> Future<?> start(String op, String key, Callable<T> work, Consumer<T> onSuccess, Consumer<Throwable> onError) {
+        Future<?>[] self = new Future<?>[1];
+        // done() also runs for a task cancelled before it started, whose body never does
+        FutureTask<Void> f = new FutureTask<>(() -> {
+            long t0 = System.nanoTime();
+            T result = null;
+            Throwable error = null;
+            try {
+                result = work.call();
+            } catch (Throwable t) {
+                error = t;
+            }
+            record(op, System.nanoTime() - t0, error);
+            T r = result;
+            Throwable e = error;
+            Platform.runLater(() -> {
+                Future<?> me = self[0];
+                if (key != null) {
+                    if (latest.get(key) != me) return; // superseded
+                    latest.remove(key);
+                }
+                if (me.isCancelled()) return;
+                if (e == null) { if (onSuccess != null) onSuccess.accept(r); }
+                else if (onError != null) onError.accept(e);
+            });
+        }, null) {
+            @Override
+            protected void done() {
+                Platform.runLater(() -> inFlight.set(inFlight.get() - 1));
+            }
+        };
+        self[0] = f;
+        executor.execute(f);
+        inFlight.set(inFlight.get() + 1);
+        if (key != null) latest.put(key, f);
+        return f;
+    }
+
+    private void record(String op, long nanos, Throwable error) {
+        latencies.computeIfAbsent(op, k -> new Latency()).add(nanos, error != null);
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (ms >= SLOW_MILLIS) System.out.println("[ui-op] slow " + op + " " + ms + "ms");
+    }
+
+    private static final class Latency {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        void add(long nanos, boolean failed) {
+            count.incrementAndGet();
+            if (failed) errors.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        @Override
+        public String toString() {
+            long n = count.get();
+            return String.format("count=%d errors=%d avg=%.1fms max=%.1fms", n, errors.get(),
+                    n == 0 ? 0.0 : totalNanos.get() / 1e6 / n, maxNanos.get() / 1e6);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package model;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+/**
+ * Reads and writes the Book hierarchy directly from BSON, without an intermediate Document.
+ * The {@code type} field picks the subclass ("ebook" or anything else for a printed book),
+ * with the same defaults as {@link Book#fromDocument}. Unknown fields are skipped.
+ */
+public class BookCodec implements Codec<Book> {
+
+    @Override
+    public Book decode(BsonReader reader, DecoderContext ctx) {
+        String isbn = null, title = null, author = null, type = null, downloadUrl = null;
+        int copies = 0;
+        Boolean isAvailable = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            switch (name) {
+                case "isbn": isbn = Codecs.readString(reader); break;
+                case "title": title = Codecs.readString(reader); break;
+                case "author": author = Codecs.readString(reader); break;
+                case "type": type = Codecs.readString(reader); break;
+                case "downloadUrl": downloadUrl = Codecs.readString(reader); break;
+                case "copiesAvailable": copies = (int) Codecs.readNumber(reader, 0); break;
+                case "isAvailable":
+                    if (reader.getCurrentBsonType() == BsonType.BOOLEAN) isAvailable = reader.readBoolean();
+                    else reader.skipValue();
+                    break;
+                default: reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        if ("ebook".equalsIgnoreCase(type)) return new EBook(isbn, title, author, downloadUrl);
+        return new PrintedBook(isbn, title, author, copies, isAvailable != null ? isAvailable : copies > 0);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Book b, EncoderContext ctx) {
+        writer.writeStartDocument();
+        Codecs.writeString(writer, "isbn", b.getIsbn());
+        Codecs.writeString(writer, "title", b.getTitle());
+        Codecs.writeString(writer, "author", b.getAuthor());
+        if (b instanceof EBook e) {
+            writer.writeString("type", "ebook");
+            Codecs.writeString(writer, "downloadUrl", e.getDownloadUrl());
+            writer.writeBoolean("isAvailable", true);
+        } else if (b instanceof PrintedBook p) {
+            writer.writeString("type", "printed");
+            writer.writeInt32("copiesAvailable", p.getCopiesAvailable());
+            writer.writeBoolean("isAvailable", p.isAvailable());
+        } else if (b instanceof PhysicalBook p) {
+            writer.writeString("type", "printed");
+            writer.writeInt32("copiesAvailable", p.getCopiesAvailable());
+            writer.writeBoolean("isAvailable", p.getCopiesAvailable() > 0);
+        }
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<Book> getEncoderClass() {
+        return Book.class;
+    }
+}
@@ -0,0 +1,60 @@
+package model;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import com.mongodb.MongoClientSettings;
+
+/**
+ * Codec registry for the model classes, layered over the driver defaults. Subclasses
+ * (EBook, Student, ...) resolve to their hierarchy's codec, so a collection can be typed as
+ * MongoCollection&lt;Book&gt; or MongoCollection&lt;User&gt;.
+ */
+public final class Codecs {
+
+    private static final BookCodec BOOKS = new BookCodec();
+    private static final UserCodec USERS = new UserCodec();
+
+    private static final CodecProvider HIERARCHIES = new CodecProvider() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> org.bson.codecs.Codec<T> get(Class<T> clazz, CodecRegistry registry) {
+            if (Book.class.isAssignableFrom(clazz)) return (org.bson.codecs.Codec<T>) BOOKS;
+            if (User.class.isAssignableFrom(clazz)) return (org.bson.codecs.Codec<T>) USERS;
+            return null;
+        }
+    };
+
+    public static final CodecRegistry REGISTRY = CodecRegistries.fromRegistries(
+            CodecRegistries.fromProviders(HIERARCHIES),
+            MongoClientSettings.getDefaultCodecRegistry());
+
+    private Codecs() {}
+
+    /** String value, or null for BSON null / non-string values (which are skipped). */
+    static String readString(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.STRING) return reader.readString();
+        reader.skipValue();
+        return null;
+    }
+
+    /** Any numeric BSON value as a double, or dflt for anything else. */
+    static double readNumber(BsonReader reader, double dflt) {
+        switch (reader.getCurrentBsonType()) {
+            case INT32: return reader.readInt32();
+            case INT64: return reader.readInt64();
+            case DOUBLE: return reader.readDouble();
+            case DECIMAL128: return reader.readDecimal128().doubleValue();
+            default: reader.skipValue(); return dflt;
+        }
+    }
+
+    static void writeString(BsonWriter writer, String name, String value) {
+        if (value == null) writer.writeNull(name);
+        else writer.writeString(name, value);
+    }
+}
@@ -0,0 +1,57 @@
+package model;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+/**
+ * Reads and writes the User hierarchy directly from BSON, discriminated by {@code role}.
+ * Decoding follows LibraryManagementSystem's rules: a missing role means reader and a
+ * missing id becomes "u-" + username.
+ */
+public class UserCodec implements Codec<User> {
+
+    @Override
+    public User decode(BsonReader reader, DecoderContext ctx) {
+        String id = null, username = null, password = null, role = null, studentNumber = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            switch (name) {
+                case "id": id = Codecs.readString(reader); break;
+                case "username": username = Codecs.readString(reader); break;
+                case "password": password = Codecs.readString(reader); break;
+                case "role": role = Codecs.readString(reader); break;
+                case "studentNumber": studentNumber = Codecs.readString(reader); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        if (id == null) id = "u-" + username;
+        switch (role == null ? "reader" : role.toLowerCase()) {
+            case "admin": return new Admin(id, username, password);
+            case "librarian": return new Librarian(id, username, password);
+            case "student": return new Student(id, username, password, studentNumber);
+            default: return new Reader(id, username, password);
+        }
+    }
+
+    @Override
+    public void encode(BsonWriter writer, User u, EncoderContext ctx) {
+        writer.writeStartDocument();
+        Codecs.writeString(writer, "id", u.getId());
+        Codecs.writeString(writer, "username", u.getUsername());
+        Codecs.writeString(writer, "password", u.getPassword());
+        Codecs.writeString(writer, "role", u.getRole());
+        if (u instanceof Student s && s.getStudentNumber() != null) writer.writeString("studentNumber", s.getStudentNumber());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<User> getEncoderClass() {
+        return User.class;
+    }
+}
@@ -0,0 +1,601 @@
+package service;
+
+import static com.mongodb.client.model.Filters.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * "Readers who borrowed this also borrowed" over the transactions log.
+ *
+ * Titles (by ISBN) and readers are interned to dense int ids. Each reader keeps the ids of
+ * the titles they have borrowed, and each title an open-addressing int-to-int map from
+ * co-borrowed title id to the number of readers who borrowed both. A borrow of a title the
+ * reader has not had before bumps the pair count against each title in their history, so
+ * replaying an event changes nothing. Histories keep the last {@link #MAX_HISTORY} titles;
+ * a title that has dropped out of a history and is borrowed again counts as new.
+ *
+ * The matrix is loaded from a gzip snapshot (~/.library-app/also-borrowed-&lt;key&gt;.bin, see
+ * {@link MongoClientRegistry#fileKeyOf}) and then caught up from transactions at or after
+ * the snapshot's watermark; with no snapshot it is built from the whole log,
+ * {@link TransactionArchive} segments included. Loading runs on a background thread when
+ * the first LibraryManagementSystem of a database is created; borrows that arrive meanwhile are queued and applied once it is done, and
+ * lookups return nothing until then. A catch-up that fails is retried with backoff from
+ * the same point (lookups use what it got meanwhile), and no snapshot is written until one
+ * has finished, so a partial load is never saved. A snapshot is written every snapshotMinutes
+ * (-Dlibrary.recommend.snapshotMinutes, default 5) when something changed, and by
+ * shutdownAll; the state is copied under the lock and compressed outside it, so borrows
+ * only wait for the copy.
+ */
+public final class AlsoBorrowed {
+
+    public static final int MAX_HISTORY = 500;
+    /** Lookups of up to this many results share a cached list per title. */
+    public static final int CACHED_K = 50;
+    private static final long CACHE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int MAGIC = 0x414C534F; // "ALSO"
+    private static final int VERSION = 1;
+    private static final Map<String, AlsoBorrowed> ENGINES = new ConcurrentHashMap<>();
+
+    /** A co-borrowed title and the number of readers who borrowed both. */
+    public record Recommendation(String isbn, String title, int readers) {}
+
+    public record Stats(boolean ready, int titles, int readers, long pairs, long updates, Instant watermark) {}
+
+    private record Event(String username, String isbn, String title, long at) {}
+
+    private final Path snapshotFile;
+    private final long snapshotMillis;
+    private volatile boolean ready;
+    // the catch-up from the snapshot (or the whole log) has finished; only then are snapshots written
+    private volatile boolean loaded;
+    private volatile boolean closed;
+    private Thread worker;
+
+    // all guarded by this
+    private final Map<String, Integer> titleIds = new HashMap<>();
+    private final Map<String, Integer> readerIds = new HashMap<>();
+    private String[] isbns = new String[256];
+    private String[] labels = new String[256];
+    private IntIntMap[] pairs = new IntIntMap[256];
+    private Recommendation[][] cached = new Recommendation[256][];
+    private long[] cachedAt = new long[256];
+    private boolean[] changed = new boolean[256];
+    private int titleCount;
+    private int[][] histories = new int[256][];
+    private int[] historySizes = new int[256];
+    private int readerCount;
+    private long watermark;
+    private long updates;
+    private long snapshotted;
+    private List<Event> queued = new ArrayList<>();
+
+    AlsoBorrowed(Path snapshotFile, long snapshotMillis) {
+        this.snapshotFile = snapshotFile;
+        this.snapshotMillis = snapshotMillis;
+    }
+
+    /** Engine for db's transactions; starts loading on first use. */
+    public static AlsoBorrowed of(MongoDatabase db) {
+        return ENGINES.computeIfAbsent(MongoClientRegistry.keyOf(db), k -> {
+            long minutes = Long.getLong("library.recommend.snapshotMinutes", 5);
+            AlsoBorrowed engine = new AlsoBorrowed(defaultSnapshotFile(db), TimeUnit.MINUTES.toMillis(minutes));
+            engine.start(db);
+            return engine;
+        });
+    }
+
+    public static Path defaultSnapshotFile(MongoDatabase db) {
+        return Path.of(System.getProperty("user.home"), ".library-app", "also-borrowed-" + MongoClientRegistry.fileKeyOf(db) + ".bin");
+    }
+
+    /** Writes a final snapshot for every engine and stops them. */
+    public static void shutdownAll() {
+        for (String key : List.copyOf(ENGINES.keySet())) {
+            AlsoBorrowed engine = ENGINES.remove(key);
+            if (engine != null) engine.close();
+        }
+    }
+
+    public static Map<String, Stats> statsAll() {
+        Map<String, Stats> out = new ConcurrentHashMap<>();
+        ENGINES.forEach((k, v) -> out.put(k, v.stats()));
+        return out;
+    }
+
+    public synchronized Stats stats() {
+        long total = 0;
+        for (int t = 0; t < titleCount; t++) total += pairs[t].size();
+        return new Stats(ready, titleCount, readerCount, total / 2, updates, Instant.ofEpochMilli(watermark));
+    }
+
+    public boolean isReady() { return ready; }
+
+    private void start(MongoDatabase db) {
+        worker = Thread.ofVirtual().name("also-borrowed-" + db.getName()).start(() -> {
+            Long since = restoreSnapshot();
+            long backoff = 1000;
+            while (!closed) {
+                try {
+                    catchUp(db, since);
+                    loaded = true;
+                } catch (RuntimeException e) {
+                    System.err.println("[recommend] load failed for " + db.getName() + ", retrying in " + backoff + "ms: " + e.getMessage());
+                }
+                synchronized (this) {
+                    if (queued != null) {
+                        for (Event e : queued) apply(e);
+                        queued = null;
+                        ready = true;
+                    }
+                }
+                if (loaded) break;
+                // lookups work from what is there meanwhile; replays are no-ops, so the retry
+                // starts over from the same point
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, TimeUnit.MINUTES.toMillis(1));
+            }
+            while (!closed) {
+                try {
+                    Thread.sleep(snapshotMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                snapshotIfChanged();
+            }
+        });
+    }
+
+    /** Feeds one borrow; cheap enough for the borrow path (one pass over the reader's history). */
+    public void recordBorrow(String username, String isbn, String title, Instant at) {
+        if (username == null || isbn == null) return;
+        Event e = new Event(username, isbn, title, at.toEpochMilli());
+        synchronized (this) {
+            if (queued != null) queued.add(e);
+            else apply(e);
+        }
+    }
+
+    /**
+     * The k titles most often borrowed by readers who also borrowed isbn, most shared first.
+     * For k up to CACHED_K the answer comes from a per-title list that is recomputed at most
+     * once a second, and only when the title's pairs changed; popular titles have thousands
+     * of pairs, so that keeps them as cheap as the rest.
+     */
+    public synchronized List<Recommendation> recommend(String isbn, int k) {
+        Integer id = ready ? titleIds.get(isbn) : null;
+        if (id == null || k <= 0) return List.of();
+        if (k > CACHED_K) return topOf(id, k);
+        long now = System.nanoTime();
+        Recommendation[] hit = cached[id];
+        if (hit == null || (changed[id] && now - cachedAt[id] > CACHE_NANOS)) {
+            hit = cached[id] = topOf(id, CACHED_K).toArray(new Recommendation[0]);
+            cachedAt[id] = now;
+            changed[id] = false;
+        }
+        return List.of(hit).subList(0, Math.min(k, hit.length));
+    }
+
+    // size-k min-heap over the title's pair map
+    private List<Recommendation> topOf(int id, int k) {
+        IntIntMap co = pairs[id];
+        k = Math.min(k, co.size());
+        int[] heapKeys = new int[k];
+        int[] heapCounts = new int[k];
+        int filled = 0;
+        for (int slot = 0; slot < co.keys.length; slot++) {
+            int other = co.keys[slot];
+            if (other == IntIntMap.FREE) continue;
+            int count = co.values[slot];
+            if (filled < k) {
+                heapKeys[filled] = other;
+                heapCounts[filled] = count;
+                siftUp(heapKeys, heapCounts, filled++);
+            } else if (k > 0 && count > heapCounts[0]) {
+                heapKeys[0] = other;
+                heapCounts[0] = count;
+                siftDown(heapKeys, heapCounts, filled);
+            }
+        }
+        List<Recommendation> out = new ArrayList<>(filled);
+        // popping the min-heap yields ascending counts
+        for (int end = filled - 1; end >= 0; end--) {
+            out.add(new Recommendation(isbns[heapKeys[0]], labels[heapKeys[0]], heapCounts[0]));
+            heapKeys[0] = heapKeys[end];
+            heapCounts[0] = heapCounts[end];
+            siftDown(heapKeys, heapCounts, end);
+        }
+        Collections.reverse(out);
+        return out;
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        if (worker != null) {
+            worker.interrupt();
+            try { worker.join(TimeUnit.SECONDS.toMillis(5)); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        }
+        snapshotIfChanged();
+    }
+
+    // --- incremental update ---------------------------------------------------------------
+
+    private void apply(Event e) {
+        int title = titleId(e.isbn(), e.title());
+        int reader = readerId(e.username());
+        int[] history = histories[reader];
+        int size = historySizes[reader];
+        for (int i = 0; i < size; i++) if (history[i] == title) { watermark = Math.max(watermark, e.at()); return; }
+        for (int i = 0; i < size; i++) {
+            pairs[title].increment(history[i]);
+            pairs[history[i]].increment(title);
+            changed[history[i]] = true;
+        }
+        changed[title] = true;
+        if (size == MAX_HISTORY) {
+            System.arraycopy(history, 1, history, 0, size - 1);
+            size--;
+        } else if (size == history.length) {
+            history = histories[reader] = Arrays.copyOf(history, Math.min(MAX_HISTORY, size * 2));
+        }
+        history[size] = title;
+        historySizes[reader] = size + 1;
+        watermark = Math.max(watermark, e.at());
+        updates++;
+    }
+
+    private int titleId(String isbn, String title) {
+        Integer id = titleIds.get(isbn);
+        if (id == null) {
+            if (titleCount == isbns.length) {
+                isbns = Arrays.copyOf(isbns, titleCount * 2);
+                labels = Arrays.copyOf(labels, titleCount * 2);
+                pairs = Arrays.copyOf(pairs, titleCount * 2);
+                cached = Arrays.copyOf(cached, titleCount * 2);
+                cachedAt = Arrays.copyOf(cachedAt, titleCount * 2);
+                changed = Arrays.copyOf(changed, titleCount * 2);
+            }
+            id = titleCount++;
+            titleIds.put(isbn, id);
+            isbns[id] = isbn;
+            pairs[id] = new IntIntMap(4);
+        }
+        if (title != null) labels[id] = title;
+        return id;
+    }
+
+    private int readerId(String username) {
+        Integer id = readerIds.get(username);
+        if (id == null) {
+            if (readerCount == histories.length) {
+                histories = Arrays.copyOf(histories, readerCount * 2);
+                historySizes = Arrays.copyOf(historySizes, readerCount * 2);
+            }
+            id = readerCount++;
+            readerIds.put(username, id);
+            histories[id] = new int[4];
+        }
+        return id;
+    }
+
+    // --- loading --------------------------------------------------------------------------
+
+    // the restored snapshot's watermark, or null to build from the whole log
+    private Long restoreSnapshot() {
+        try {
+            if (restore()) synchronized (this) { return watermark; }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[recommend] ignoring unreadable snapshot " + snapshotFile + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private void catchUp(MongoDatabase db, Long since) {
+        // archived borrows first, so a rebuild without a snapshot still sees the whole history
+        TransactionArchive.of(db).scan(since == null ? null : Instant.ofEpochMilli(since), t -> {
+            if (!"borrow".equals(t.action()) || t.username() == null || t.isbn() == null) return;
+            Event e = new Event(t.username(), t.isbn(), t.title(), t.timestamp().toEpochMilli());
+            synchronized (this) { apply(e); }
+        });
+        TransactionHistory history = TransactionHistory.of(db);
+        List<String> userPath = List.of(history.usernameField().split("\\."));
+        List<String> isbnPath = List.of(history.isbnField().split("\\."));
+        Bson filter = eq("action", "borrow");
+        // replays are no-ops, so starting at (not after) the watermark is safe
+        if (since != null) filter = and(filter, gte("timestamp", new Date(since)));
+        MongoCollection<Document> tx = db.getCollection(TransactionHistory.COLLECTION);
+        for (Document d : tx.find(filter)
+                .projection(Projections.include(history.usernameField(), history.isbnField(), "title", "timestamp"))
+                .sort(Sorts.ascending("timestamp")).batchSize(5000)) {
+            Instant at = TransactionHistory.instantOf(d.get("timestamp"));
+            Event e = new Event(d.getEmbedded(userPath, String.class), d.getEmbedded(isbnPath, String.class),
+                    d.getString("title"), at == null ? 0 : at.toEpochMilli());
+            if (e.username() == null || e.isbn() == null) continue;
+            synchronized (this) { apply(e); }
+        }
+    }
+
+    // --- snapshots ------------------------------------------------------------------------
+
+    private void snapshotIfChanged() {
+        // a partial load plus live borrows would save a watermark past history never loaded
+        if (!loaded) return;
+        State copy;
+        long at;
+        synchronized (this) {
+            if (updates == snapshotted) return;
+            at = updates;
+            copy = copyState();
+        }
+        byte[] bytes;
+        try {
+            bytes = copy.serialize();
+        } catch (IOException e) {
+            return; // in-memory streams do not fail
+        }
+        try {
+            Files.createDirectories(snapshotFile.getParent());
+            Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (this) { snapshotted = at; }
+        } catch (IOException e) {
+            System.err.println("[recommend] could not write snapshot " + snapshotFile + ": " + e.getMessage());
+        }
+    }
+
+    // caller holds the lock; plain array copies, the expensive part happens in serialize
+    private State copyState() {
+        String[] names = new String[readerCount];
+        readerIds.forEach((name, id) -> names[id] = name);
+        int[][] h = new int[readerCount][];
+        for (int r = 0; r < readerCount; r++) h[r] = Arrays.copyOf(histories[r], historySizes[r]);
+        IntIntMap[] co = new IntIntMap[titleCount];
+        for (int t = 0; t < titleCount; t++) co[t] = pairs[t].copy();
+        return new State(watermark, Arrays.copyOf(isbns, titleCount), Arrays.copyOf(labels, titleCount), names, h, co);
+    }
+
+    private boolean restore() throws IOException {
+        if (!Files.exists(snapshotFile)) return false;
+        byte[] bytes = Files.readAllBytes(snapshotFile);
+        State state;
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return false;
+            state = State.read(in);
+        }
+        // parsed in full before anything live changes, so a truncated file leaves the engine empty
+        synchronized (this) { install(state); }
+        return true;
+    }
+
+    // caller holds the lock
+    private void install(State state) {
+        int titles = state.isbns().length;
+        int readers = state.readers().length;
+        int titleCap = capacityFor(titles);
+        int readerCap = capacityFor(readers);
+        titleIds.clear();
+        readerIds.clear();
+        isbns = Arrays.copyOf(state.isbns(), titleCap);
+        labels = Arrays.copyOf(state.labels(), titleCap);
+        pairs = Arrays.copyOf(state.pairs(), titleCap);
+        cached = new Recommendation[titleCap][];
+        cachedAt = new long[titleCap];
+        changed = new boolean[titleCap];
+        for (int t = 0; t < titles; t++) titleIds.put(isbns[t], t);
+        titleCount = titles;
+        histories = new int[readerCap][];
+        historySizes = new int[readerCap];
+        for (int r = 0; r < readers; r++) {
+            int[] h = state.histories()[r];
+            histories[r] = Arrays.copyOf(h, Math.max(4, h.length));
+            historySizes[r] = h.length;
+            readerIds.put(state.readers()[r], r);
+        }
+        readerCount = readers;
+        watermark = state.watermark();
+        snapshotted = updates;
+    }
+
+    private static int capacityFor(int n) {
+        return Math.max(256, Integer.highestOneBit(Math.max(1, n - 1)) << 1);
+    }
+
+    /** Detached copy of the matrix: what a snapshot holds, written and read off the lock. */
+    private record State(long watermark, String[] isbns, String[] labels, String[] readers,
+                         int[][] histories, IntIntMap[] pairs) {
+
+        // gzip keeps the pair lists, mostly small ints, compact
+        byte[] serialize() throws IOException {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(buf, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(watermark);
+                out.writeInt(isbns.length);
+                for (int t = 0; t < isbns.length; t++) {
+                    out.writeUTF(isbns[t]);
+                    out.writeUTF(labels[t] == null ? "" : labels[t]);
+                }
+                out.writeInt(readers.length);
+                for (int r = 0; r < readers.length; r++) {
+                    out.writeUTF(readers[r]);
+                    out.writeInt(histories[r].length);
+                    for (int title : histories[r]) out.writeInt(title);
+                }
+                for (IntIntMap co : pairs) {
+                    out.writeInt(co.size());
+                    for (int slot = 0; slot < co.keys.length; slot++) {
+                        if (co.keys[slot] == IntIntMap.FREE) continue;
+                        out.writeInt(co.keys[slot]);
+                        out.writeInt(co.values[slot]);
+                    }
+                }
+            }
+            return buf.toByteArray();
+        }
+
+        // after MAGIC and VERSION
+        static State read(DataInputStream in) throws IOException {
+            long watermark = in.readLong();
+            int titles = in.readInt();
+            String[] isbns = new String[titles];
+            String[] labels = new String[titles];
+            for (int t = 0; t < titles; t++) {
+                isbns[t] = in.readUTF();
+                String label = in.readUTF();
+                labels[t] = label.isEmpty() ? null : label;
+            }
+            int readerCount = in.readInt();
+            String[] readers = new String[readerCount];
+            int[][] histories = new int[readerCount][];
+            for (int r = 0; r < readerCount; r++) {
+                readers[r] = in.readUTF();
+                int[] h = new int[in.readInt()];
+                for (int i = 0; i < h.length; i++) h[i] = in.readInt();
+                histories[r] = h;
+            }
+            IntIntMap[] pairs = new IntIntMap[titles];
+            for (int t = 0; t < titles; t++) {
+                int n = in.readInt();
+                IntIntMap co = new IntIntMap(n);
+                for (int i = 0; i < n; i++) co.put(in.readInt(), in.readInt());
+                pairs[t] = co;
+            }
+            return new State(watermark, isbns, labels, readers, histories, pairs);
+        }
+    }
+
+    // --- heap helpers (min-heap on counts, keys carried along) -----------------------------
+
+    private static void siftUp(int[] keys, int[] counts, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (counts[parent] <= counts[i]) return;
+            swap(keys, counts, parent, i);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] keys, int[] counts, int len) {
+        int i = 0;
+        while (true) {
+            int l = 2 * i + 1, r = l + 1, min = i;
+            if (l < len && counts[l] < counts[min]) min = l;
+            if (r < len && counts[r] < counts[min]) min = r;
+            if (min == i) return;
+            swap(keys, counts, min, i);
+            i = min;
+        }
+    }
+
+    private static void swap(int[] keys, int[] counts, int a, int b) {
+        int k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+        int c = counts[a]; counts[a] = counts[b]; counts[b] = c;
+    }
+
+    /** Open-addressing int to int map with linear probing; keys are non-negative ids. */
+    static final class IntIntMap {
+        static final int FREE = -1;
+
+        int[] keys;
+        int[] values;
+        private int size;
+
+        IntIntMap(int expected) {
+            int cap = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            keys = new int[cap];
+            values = new int[cap];
+            Arrays.fill(keys, FREE);
+        }
+
+        int size() { return size; }
+
+        IntIntMap copy() {
+            IntIntMap c = new IntIntMap(0);
+            c.keys = keys.clone();
+            c.values = values.clone();
+            c.size = size;
+            return c;
+        }
+
+        void increment(int key) {
+            int slot = slotOf(key);
+            if (keys[slot] == FREE) { insert(slot, key, 1); return; }
+            values[slot]++;
+        }
+
+        void put(int key, int value) {
+            int slot = slotOf(key);
+            if (keys[slot] == FREE) insert(slot, key, value);
+            else values[slot] = value;
+        }
+
+        // slot holding key, or the free slot where it belongs
+        private int slotOf(int key) {
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (keys[slot] != FREE && keys[slot] != key) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void insert(int slot, int key, int value) {
+            keys[slot] = key;
+            values[slot] = value;
+            if (++size * 2 > keys.length) grow();
+        }
+
+        private void grow() {
+            int[] oldKeys = keys, oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            Arrays.fill(keys, FREE);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slotOf(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    size++;
+                }
+            }
+        }
+
+        private static int mix(int x) {
+            x *= 0x9E3779B9;
+            return x ^ (x >>> 16);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+import com.mongodb.client.MongoDatabase;
+
+import model.Book;
+import model.User;
+
+/**
+ * Non-blocking facade over {@link LibraryManagementSystem}.
+ *
+ * Every call runs the sync implementation on its own virtual thread and returns a
+ * CompletableFuture, so callers can start several lookups at once and join them together
+ * (e.g. {@code allOf(users, books)}) instead of paying for each round trip in turn. The
+ * rules, caches and codecs are the sync class's, so both APIs behave the same.
+ * Listings are also offered as Flow.Publishers that read the cursor on demand.
+ */
+public class AsyncLibraryManagementSystem {
+
+    /** Cursor batch size ceiling for the publishers. */
+    public static final int MAX_BATCH = 1000;
+
+    private static final Executor VIRTUAL = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LibraryManagementSystem sync;
+    private final Executor executor;
+
+    public AsyncLibraryManagementSystem(MongoDatabase db) {
+        this(new LibraryManagementSystem(db), VIRTUAL);
+    }
+
+    public AsyncLibraryManagementSystem(LibraryManagementSystem sync, Executor executor) {
+        this.sync = sync;
+        this.executor = executor;
+    }
+
+    /** The blocking service this facade delegates to. */
+    public LibraryManagementSystem blocking() { return sync; }
+
+    public CompletableFuture<User> findUserByUsername(String username) {
+        return async(() -> sync.findUserByUsername(username));
+    }
+
+    public CompletableFuture<User> login(String username, String password) {
+        return async(() -> sync.login(username, password));
+    }
+
+    public CompletableFuture<Void> addUser(User user) {
+        return async(() -> { sync.addUser(user); return null; });
+    }
+
+    public CompletableFuture<Boolean> deleteUserByUsername(String username) {
+        return async(() -> sync.deleteUserByUsername(username));
+    }
+
+    public CompletableFuture<List<User>> listAllUsers() {
+        return async(sync::listAllUsers);
+    }
+
+    public CompletableFuture<List<LibraryManagementSystem.UserSummary>> listUserSummaries() {
+        return async(sync::listUserSummaries);
+    }
+
+    public CompletableFuture<Void> addBook(Book b) {
+        return async(() -> { sync.addBook(b); return null; });
+    }
+
+    public CompletableFuture<Boolean> updateBookByIsbn(String isbn, Book updated) {
+        return async(() -> sync.updateBookByIsbn(isbn, updated));
+    }
+
+    public CompletableFuture<Boolean> borrowBook(String title, String username) {
+        return async(() -> sync.borrowBook(title, username));
+    }
+
+    public CompletableFuture<Boolean> returnBook(String title, String username) {
+        return async(() -> sync.returnBook(title, username));
+    }
+
+    public CompletableFuture<List<String>> loansOf(String username) {
+        return async(() -> sync.loansOf(username));
+    }
+
+    public CompletableFuture<List<TransactionHistory.Entry>> historyOfUser(String username, Instant from, Instant to) {
+        return async(() -> sync.historyOfUser(username, from, to));
+    }
+
+    public CompletableFuture<List<TransactionHistory.Entry>> historyOfTitle(String isbn, Instant from, Instant to) {
+        return async(() -> sync.historyOfTitle(isbn, from, to));
+    }
+
+    public CompletableFuture<List<AlsoBorrowed.Recommendation>> alsoBorrowed(String isbn, int k) {
+        return async(() -> sync.alsoBorrowed(isbn, k));
+    }
+
+    public CompletableFuture<List<BorrowStats.Ranked>> mostBorrowed(BorrowStats.Kind kind, int n, LocalDate from, LocalDate to) {
+        return async(() -> sync.mostBorrowed(kind, n, from, to));
+    }
+
+    public CompletableFuture<List<Book>> listAllBooks() {
+        return async(sync::listAllBooks);
+    }
+
+    public CompletableFuture<List<LibraryManagementSystem.BookSummary>> listBookSummaries() {
+        return async(sync::listBookSummaries);
+    }
+
+    /** Every user, streamed; bypasses the user cache. */
+    public Flow.Publisher<User> users() {
+        return new CursorPublisher<>(sync::userQuery, executor, MAX_BATCH);
+    }
+
+    /** Every catalogue entry as a Book, streamed. */
+    public Flow.Publisher<Book> books() {
+        return new CursorPublisher<>(sync::bookQuery, executor, MAX_BATCH);
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+}
@@ -0,0 +1,319 @@
+package service;
+
+import static com.mongodb.client.model.Filters.*;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * Pre-aggregated borrow counts per title and per reader, bucketed by UTC day.
+ *
+ * Each borrow bumps an in-memory tally and a pending per-day increment; a flusher thread
+ * writes the pending increments every flushMillis as {@code $inc} upserts into borrow_stats
+ * (one document per kind, key and day), so the borrow path never waits on them. Increments
+ * whose write failed are kept for the next round; those the server reported as applied are
+ * not. The tallies are rebuilt from the buckets on a background thread when the first
+ * LibraryManagementSystem of a database is created, and flushing waits until that is done
+ * so the rebuild never counts a borrow the tallies already hold; until then the all-time
+ * leaderboards only show borrows made since startup. Windowed ones sum the buckets in range
+ * via the kind_day index, which touches at most keys x days small documents instead of the
+ * transactions log.
+ *
+ * Counting starts when this class is deployed; earlier transactions are not back-filled.
+ * One instance exists per database (see {@link #of}); flushAll/shutdownAll mirror
+ * {@link TransactionLog}.
+ */
+public final class BorrowStats {
+
+    public enum Kind { TITLE, READER }
+
+    public static final String COLLECTION = "borrow_stats";
+    public static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    /** One leaderboard row; label is the title for TITLE (key is the ISBN, or the name without one). */
+    public record Ranked(String key, String label, long borrows) {}
+
+    public record Stats(boolean ready, int tracked, long recorded, long flushedBuckets, long failedFlushes) {}
+
+    private record Bucket(Kind kind, String key, String day) {}
+
+    private static final Map<String, BorrowStats> STATS = new ConcurrentHashMap<>();
+
+    private final MongoCollection<Document> buckets;
+    private final long flushMillis;
+    private final Tally titles = new Tally();
+    private final Tally readers = new Tally();
+    private final Thread flusher;
+    private volatile boolean ready;
+    private volatile boolean closed;
+
+    // guarded by this; swapped out whole by the flusher
+    private Map<Bucket, long[]> pending = new HashMap<>();
+    private final Map<Bucket, String> labels = new HashMap<>();
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong flushedBuckets = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+
+    public BorrowStats(MongoCollection<Document> buckets, long flushMillis) {
+        this.buckets = buckets;
+        this.flushMillis = flushMillis;
+        Thread.ofVirtual().name("borrow-stats-load-" + buckets.getNamespace().getFullName()).start(() -> {
+            rebuild();
+            ready = true;
+        });
+        this.flusher = new Thread(this::run, "borrow-stats-" + buckets.getNamespace().getFullName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /** Shared counters for db's borrow_stats collection. */
+    public static BorrowStats of(MongoDatabase db) {
+        return STATS.computeIfAbsent(MongoClientRegistry.keyOf(db), k -> new BorrowStats(db.getCollection(COLLECTION), DEFAULT_FLUSH_MILLIS));
+    }
+
+    public static void flushAll() {
+        for (BorrowStats s : STATS.values()) s.flush();
+    }
+
+    public static void shutdownAll() {
+        for (String key : List.copyOf(STATS.keySet())) {
+            BorrowStats s = STATS.remove(key);
+            if (s != null) s.close();
+        }
+    }
+
+    public static Map<String, Stats> statsAll() {
+        Map<String, Stats> out = new ConcurrentHashMap<>();
+        STATS.forEach((k, v) -> out.put(k, v.stats()));
+        return out;
+    }
+
+    public Stats stats() {
+        return new Stats(ready, titles.size() + readers.size(), recorded.get(), flushedBuckets.get(), failedFlushes.get());
+    }
+
+    public void recordBorrow(String titleKey, String title, String username, Instant at) {
+        String day = LocalDate.ofInstant(at, ZoneOffset.UTC).toString();
+        if (titleKey != null) titles.add(titleKey, title, 1);
+        if (username != null) readers.add(username, null, 1);
+        synchronized (this) {
+            if (titleKey != null) {
+                Bucket b = new Bucket(Kind.TITLE, titleKey, day);
+                pending.computeIfAbsent(b, x -> new long[1])[0]++;
+                if (title != null) labels.put(b, title);
+            }
+            if (username != null) pending.computeIfAbsent(new Bucket(Kind.READER, username, day), x -> new long[1])[0]++;
+        }
+        recorded.incrementAndGet();
+        if (closed) flush(); // the flusher is gone; write through
+    }
+
+    /** The n most borrowed titles of all time, from memory. */
+    public List<Ranked> topTitles(int n) { return titles.top(n); }
+
+    /** The n readers with the most borrows of all time, from memory. */
+    public List<Ranked> topReaders(int n) { return readers.top(n); }
+
+    /**
+     * The n most borrowed keys of the given kind over UTC days [from, to), summed from the day
+     * buckets on the server. Increments not yet flushed are not included.
+     */
+    public List<Ranked> top(Kind kind, int n, LocalDate from, LocalDate to) {
+        List<Ranked> out = new ArrayList<>(n);
+        for (Document d : buckets.aggregate(List.of(
+                Aggregates.match(and(eq("kind", kind.name()), gte("day", from.toString()), lt("day", to.toString()))),
+                Aggregates.group("$key", Accumulators.sum("borrows", "$borrows"), Accumulators.last("label", "$label")),
+                Aggregates.sort(Sorts.descending("borrows")),
+                Aggregates.limit(n)))) {
+            out.add(new Ranked(d.getString("_id"), d.getString("label"), d.get("borrows", Number.class).longValue()));
+        }
+        return out;
+    }
+
+    public void flush() {
+        Map<Bucket, long[]> batch;
+        Map<Bucket, String> names;
+        synchronized (this) {
+            // before the rebuild has read the buckets, a flushed increment would be counted twice
+            if (pending.isEmpty() || (!ready && !closed)) return;
+            batch = pending;
+            names = new HashMap<>(labels);
+            pending = new HashMap<>();
+            labels.clear();
+        }
+        List<WriteModel<Document>> writes = new ArrayList<>(batch.size());
+        List<Bucket> order = new ArrayList<>(batch.size());
+        UpdateOptions upsert = new UpdateOptions().upsert(true);
+        batch.forEach((b, count) -> {
+            order.add(b);
+            Document id = new Document("kind", b.kind().name()).append("key", b.key()).append("day", b.day());
+            String label = names.get(b);
+            writes.add(new UpdateOneModel<>(eq("_id", id), Updates.combine(
+                    Updates.inc("borrows", count[0]),
+                    Updates.setOnInsert("kind", b.kind().name()),
+                    Updates.setOnInsert("key", b.key()),
+                    Updates.setOnInsert("day", b.day()),
+                    label == null ? new Document() : Updates.set("label", label)), upsert));
+        });
+        try {
+            buckets.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            flushedBuckets.addAndGet(writes.size());
+        } catch (MongoBulkWriteException e) {
+            // unordered: every write without an error of its own was applied, so only those go back
+            List<Bucket> failed = new ArrayList<>(e.getWriteErrors().size());
+            for (BulkWriteError err : e.getWriteErrors()) failed.add(order.get(err.getIndex()));
+            failedFlushes.incrementAndGet();
+            flushedBuckets.addAndGet(writes.size() - failed.size());
+            System.err.println("[stats] " + failed.size() + " of " + writes.size() + " bucket writes failed, will retry: " + e.getMessage());
+            requeue(failed, batch, names);
+        } catch (RuntimeException e) {
+            // no reply, so nothing is known to have applied
+            failedFlushes.incrementAndGet();
+            System.err.println("[stats] flush of " + writes.size() + " buckets failed, will retry: " + e.getMessage());
+            requeue(order, batch, names);
+        }
+    }
+
+    private synchronized void requeue(List<Bucket> failed, Map<Bucket, long[]> batch, Map<Bucket, String> names) {
+        for (Bucket b : failed) {
+            pending.computeIfAbsent(b, x -> new long[1])[0] += batch.get(b)[0];
+            String label = names.get(b);
+            if (label != null) labels.putIfAbsent(b, label);
+        }
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        flusher.interrupt();
+        try { flusher.join(TimeUnit.SECONDS.toMillis(5)); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        flush();
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                Thread.sleep(flushMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush();
+        }
+    }
+
+    private void rebuild() {
+        try {
+            for (Document d : buckets.aggregate(List.of(Aggregates.group(
+                    new Document("kind", "$kind").append("key", "$key"),
+                    Accumulators.sum("borrows", "$borrows"), Accumulators.last("label", "$label"))))) {
+                Document id = d.get("_id", Document.class);
+                Tally t = Kind.TITLE.name().equals(id.getString("kind")) ? titles : readers;
+                t.add(id.getString("key"), d.getString("label"), d.get("borrows", Number.class).longValue());
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[stats] could not rebuild leaderboards from " + COLLECTION + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Counts keyed by a dense int id per key: the hot path is one map lookup and an array
+     * increment, and top(n) runs a size-n min-heap over the count array.
+     */
+    private static final class Tally {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private String[] keys = new String[256];
+        private String[] labels = new String[256];
+        private long[] counts = new long[256];
+        private int size;
+
+        synchronized void add(String key, String label, long n) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                if (size == counts.length) {
+                    keys = Arrays.copyOf(keys, size * 2);
+                    labels = Arrays.copyOf(labels, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                }
+                id = size++;
+                ids.put(key, id);
+                keys[id] = key;
+            }
+            counts[id] += n;
+            if (label != null) labels[id] = label;
+        }
+
+        synchronized int size() { return size; }
+
+        synchronized List<Ranked> top(int n) {
+            int k = Math.min(n, size);
+            int[] heap = new int[k];
+            int filled = 0;
+            for (int id = 0; id < size; id++) {
+                if (filled < k) {
+                    heap[filled] = id;
+                    siftUp(heap, filled++);
+                } else if (k > 0 && counts[id] > counts[heap[0]]) {
+                    heap[0] = id;
+                    siftDown(heap, k);
+                }
+            }
+            List<Ranked> out = new ArrayList<>(k);
+            // popping the min-heap yields ascending counts
+            for (int end = k - 1; end >= 0; end--) {
+                int top = heap[0];
+                heap[0] = heap[end];
+                siftDown(heap, end);
+                out.add(new Ranked(keys[top], labels[top], counts[top]));
+            }
+            Collections.reverse(out);
+            return out;
+        }
+
+        private void siftUp(int[] heap, int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (counts[heap[parent]] <= counts[heap[i]]) return;
+                int t = heap[parent]; heap[parent] = heap[i]; heap[i] = t;
+                i = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int len) {
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, min = i;
+                if (l < len && counts[heap[l]] < counts[heap[min]]) min = l;
+                if (r < len && counts[heap[r]] < counts[heap[min]]) min = r;
+                if (min == i) return;
+                int t = heap[min]; heap[min] = heap[i]; heap[i] = t;
+                i = min;
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.bson.BsonDocument;
+import org.bson.Document;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoException;
+import com.mongodb.MongoSecurityException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+
+/**
+ * Follows a collection's change stream and hands coalesced batches of changes to a sink.
+ *
+ * Events arriving within coalesceMillis of each other are merged per _id (last write wins,
+ * a delete cancels earlier upserts) so a burst of edits touches the UI once. The resume
+ * token is saved to tokenFile after every delivered batch, so a restart or reconnect picks
+ * up where it left off. While idle the server still advances the token on every poll; that
+ * one is saved at most once a minute. If the token has fallen off the oplog the feed
+ * restarts from "now" and sends a batch with reset=true so the consumer can reload.
+ *
+ * Any other failure is passed to onError and the stream is reopened from the saved token,
+ * with backoff up to 30 s, until the feed is closed. Only errors a retry cannot fix (see
+ * {@link #isUnrecoverable}) stop it for good.
+ *
+ * Change streams need a replica set; a single-node one is enough for local use.
+ */
+public final class CatalogChangeFeed implements AutoCloseable {
+
+    /** Changes since the previous batch; reset means "state unknown, reload everything". */
+    public record Batch(List<Document> upserts, Set<Object> deletes, boolean reset) {}
+
+    private static final int HISTORY_LOST = 286;
+    private static final int CHANGE_STREAM_FATAL = 280;
+    private static final int UNAUTHORIZED = 13, AUTHENTICATION_FAILED = 18, COMMAND_NOT_SUPPORTED = 115;
+    private static final int REPLICA_SET_REQUIRED = 40573;
+    private static final long IDLE_SAVE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final MongoCollection<Document> collection;
+    private final Path tokenFile;
+    private final long coalesceMillis;
+    private final Consumer<Batch> sink;
+    private final Consumer<Throwable> onError;
+    private volatile boolean closed;
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    private Thread worker;
+    private BsonDocument lastSaved;
+    private long lastSavedAt;
+
+    public CatalogChangeFeed(MongoCollection<Document> collection, Path tokenFile, long coalesceMillis,
+                             Consumer<Batch> sink, Consumer<Throwable> onError) {
+        this.collection = collection;
+        this.tokenFile = tokenFile;
+        this.coalesceMillis = coalesceMillis;
+        this.sink = sink;
+        this.onError = onError;
+    }
+
+    /** Default token location: ~/.library-app/resume-&lt;db.collection&gt;.json */
+    public static Path defaultTokenFile(MongoCollection<Document> collection) {
+        return Path.of(System.getProperty("user.home"), ".library-app",
+                "resume-" + collection.getNamespace().getFullName() + ".json");
+    }
+
+    /** True for errors a reopened stream would hit again: no replica set, or no permission. */
+    public static boolean isUnrecoverable(Throwable e) {
+        if (e instanceof MongoSecurityException) return true;
+        if (!(e instanceof MongoCommandException c)) return false;
+        int code = c.getErrorCode();
+        return code == REPLICA_SET_REQUIRED || code == UNAUTHORIZED || code == AUTHENTICATION_FAILED
+                || code == COMMAND_NOT_SUPPORTED;
+    }
+
+    public synchronized void start() {
+        if (worker != null) return;
+        worker = Thread.ofVirtual().name("change-feed-" + collection.getNamespace().getFullName()).start(this::run);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        MongoChangeStreamCursor<?> c = cursor;
+        if (c != null) {
+            try { c.close(); } catch (Exception ignored) {}
+        }
+        if (worker != null) worker.interrupt();
+    }
+
+    private void run() {
+        long backoff = 500;
+        while (!closed) {
+            try {
+                follow();
+                backoff = 500;
+            } catch (MongoCommandException e) {
+                if (closed) break;
+                if (e.getErrorCode() == HISTORY_LOST || e.getErrorCode() == CHANGE_STREAM_FATAL) {
+                    deleteToken();
+                    sink.accept(new Batch(List.of(), Set.of(), true));
+                    continue;
+                }
+                if (!retry(e, backoff)) break;
+                backoff = Math.min(backoff * 2, 30_000);
+            } catch (MongoException e) {
+                if (closed) break;
+                if (!retry(e, backoff)) break;
+                backoff = Math.min(backoff * 2, 30_000);
+            }
+        }
+    }
+
+    // reports e and waits out the backoff; false when the feed should stop
+    private boolean retry(MongoException e, long backoff) {
+        if (isUnrecoverable(e)) {
+            closed = true;
+            onError.accept(e);
+            return false;
+        }
+        System.err.println("[change-feed] " + collection.getNamespace().getFullName() + " failed, reopening in "
+                + backoff + "ms: " + e.getMessage());
+        onError.accept(e);
+        return sleep(backoff);
+    }
+
+    private void follow() {
+        ChangeStreamIterable<Document> stream = collection.watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .maxAwaitTime(Math.max(coalesceMillis, 50), TimeUnit.MILLISECONDS);
+        BsonDocument token = loadToken();
+        if (token != null) stream = stream.resumeAfter(token);
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> c = stream.cursor()) {
+            cursor = c;
+            Map<Object, Document> upserts = new LinkedHashMap<>();
+            Set<Object> deletes = new LinkedHashSet<>();
+            long deadline = 0;
+            while (!closed) {
+                ChangeStreamDocument<Document> ev = c.tryNext();
+                if (ev != null) {
+                    if (upserts.isEmpty() && deletes.isEmpty()) deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(coalesceMillis);
+                    merge(ev, upserts, deletes);
+                }
+                boolean due = (!upserts.isEmpty() || !deletes.isEmpty()) && (ev == null || System.nanoTime() >= deadline);
+                if (due) {
+                    sink.accept(new Batch(new ArrayList<>(upserts.values()), new LinkedHashSet<>(deletes), false));
+                    upserts.clear();
+                    deletes.clear();
+                    saveToken(c.getResumeToken());
+                } else if (ev == null && System.nanoTime() - lastSavedAt >= IDLE_SAVE_NANOS) {
+                    // idle: keep the post-batch token fresh so a restart does not replay much old oplog
+                    saveToken(c.getResumeToken());
+                }
+            }
+        } finally {
+            cursor = null;
+        }
+    }
+
+    private static void merge(ChangeStreamDocument<Document> ev, Map<Object, Document> upserts, Set<Object> deletes) {
+        BsonDocument key = ev.getDocumentKey();
+        if (key == null || ev.getOperationType() == null) return;
+        Object id = Document.parse(key.toJson()).get("_id");
+        switch (ev.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                Document full = ev.getFullDocument();
+                if (full == null) { upserts.remove(id); deletes.add(id); } // deleted before lookup
+                else { deletes.remove(id); upserts.put(id, full); }
+            }
+            case DELETE -> { upserts.remove(id); deletes.add(id); }
+            default -> { }
+        }
+    }
+
+    private BsonDocument loadToken() {
+        try {
+            if (!Files.exists(tokenFile)) return null;
+            return BsonDocument.parse(Files.readString(tokenFile, StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private void saveToken(BsonDocument token) {
+        lastSavedAt = System.nanoTime();
+        if (token == null || token.equals(lastSaved)) return;
+        try {
+            Files.createDirectories(tokenFile.getParent());
+            Path tmp = tokenFile.resolveSibling(tokenFile.getFileName() + ".tmp");
+            Files.writeString(tmp, token.toJson(), StandardCharsets.UTF_8);
+            Files.move(tmp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lastSaved = token;
+        } catch (IOException e) {
+            System.err.println("[change-feed] could not save resume token: " + e.getMessage());
+        }
+    }
+
+    private void deleteToken() {
+        try { Files.deleteIfExists(tokenFile); } catch (IOException ignored) {}
+        lastSaved = null;
+    }
+
+    private boolean sleep(long millis) {
+        try { Thread.sleep(millis); return true; } catch (InterruptedException e) { return false; }
+    }
+}
@@ -0,0 +1,336 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.bson.Document;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+
+import model.Book;
+import model.EBook;
+import model.PrintedBook;
+
+/**
+ * Streams a CSV or JSONL catalogue file into the products collection.
+ *
+ * Rows are parsed one at a time and mapped through PrintedBook/EBook plus the same defaults
+ * as {@link LibraryManagementSystem#addBook}. Batches are written with unordered bulkWrite on
+ * virtual threads, at most maxInFlight at once, so memory stays flat regardless of file size.
+ * Every row becomes a {@code $setOnInsert} upsert, keyed on isbn when it has one and otherwise
+ * on importKey ("<file name>:<record number>"), so the server dedupes against the collection
+ * and replaying a batch never inserts a row twice. Only the ISBNs of batches still in flight
+ * are held in memory: a repeat of one of those is skipped, since two concurrent upserts of
+ * the same ISBN could both insert; any other repeat is left to the server.
+ *
+ * Progress is checkpointed to {@code <file>.checkpoint} as the number of leading records
+ * whose batches have all been written, so a crashed import resumes where it stopped.
+ */
+public final class CatalogImporter {
+
+    public enum Format { CSV, JSONL }
+
+    public record Progress(long read, long written, long duplicates, long invalid, long failed, double rowsPerSecond) {
+        @Override
+        public String toString() {
+            return String.format("read=%d written=%d duplicates=%d invalid=%d failed=%d (%.0f rows/s)",
+                    read, written, duplicates, invalid, failed, rowsPerSecond);
+        }
+    }
+
+    private final MongoCollection<Document> products;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Consumer<Progress> progress;
+
+    private final AtomicLong read = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private long startedNanos;
+
+    public CatalogImporter(MongoCollection<Document> products, int batchSize, int maxInFlight, Consumer<Progress> progress) {
+        this.products = products;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.progress = progress;
+    }
+
+    public static Format formatOf(Path file) {
+        String n = file.getFileName().toString().toLowerCase();
+        return (n.endsWith(".jsonl") || n.endsWith(".ndjson") || n.endsWith(".json")) ? Format.JSONL : Format.CSV;
+    }
+
+    public static Path checkpointFile(Path file) {
+        return file.resolveSibling(file.getFileName() + ".checkpoint");
+    }
+
+    public Progress run(Path file, Format format) throws IOException, InterruptedException {
+        startedNanos = System.nanoTime();
+        Path checkpoint = checkpointFile(file);
+        long resumeAt = readCheckpoint(checkpoint);
+        Committer committer = new Committer(checkpoint, resumeAt);
+        ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        Set<String> pendingIsbns = ConcurrentHashMap.newKeySet();
+        String now = Instant.now().toString();
+        String source = file.getFileName().toString();
+
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            RecordReader records = format == Format.CSV ? new CsvRecords(in) : new JsonlRecords(in);
+            long recordNo = 0;
+            long batchStart = resumeAt;
+            List<WriteModel<Document>> batch = new ArrayList<>(batchSize);
+            List<String> batchIsbns = new ArrayList<>();
+            Document raw;
+            while ((raw = records.next()) != null) {
+                recordNo++;
+                if (recordNo <= resumeAt) continue;
+                read.incrementAndGet();
+                WriteModel<Document> model = toModel(raw, now, source + ":" + recordNo, pendingIsbns, batchIsbns);
+                if (model != null) batch.add(model);
+                if (batch.size() == batchSize) {
+                    submit(pool, inFlight, committer, batch, batchIsbns, pendingIsbns, batchStart, recordNo);
+                    batch = new ArrayList<>(batchSize);
+                    batchIsbns = new ArrayList<>();
+                    batchStart = recordNo;
+                }
+            }
+            if (!batch.isEmpty() || recordNo > batchStart) submit(pool, inFlight, committer, batch, batchIsbns, pendingIsbns, batchStart, recordNo);
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.HOURS);
+        }
+        Progress done = snapshot();
+        if (failed.get() == 0) Files.deleteIfExists(checkpoint);
+        return done;
+    }
+
+    private void submit(ExecutorService pool, Semaphore inFlight, Committer committer, List<WriteModel<Document>> batch,
+                        List<String> isbns, Set<String> pendingIsbns, long fromRecord, long toRecord) throws InterruptedException {
+        inFlight.acquire(); // backpressure: the reader waits when maxInFlight batches are pending
+        pool.submit(() -> {
+            try {
+                // a batch that never reached the server holds the checkpoint back so a rerun retries it
+                if (write(batch)) committer.done(fromRecord, toRecord);
+            } finally {
+                pendingIsbns.removeAll(isbns);
+                inFlight.release();
+                progress.accept(snapshot());
+            }
+        });
+    }
+
+    private boolean write(List<WriteModel<Document>> batch) {
+        if (batch.isEmpty()) return true;
+        try {
+            BulkWriteResult r = products.bulkWrite(batch, new BulkWriteOptions().ordered(false));
+            written.addAndGet(r.getInsertedCount() + r.getUpserts().size());
+            duplicates.addAndGet(r.getMatchedCount());
+            return true;
+        } catch (MongoBulkWriteException e) {
+            BulkWriteResult r = e.getWriteResult();
+            written.addAndGet(r.getInsertedCount() + r.getUpserts().size());
+            duplicates.addAndGet(r.getMatchedCount());
+            failed.addAndGet(e.getWriteErrors().size());
+            return true; // per-document errors (e.g. duplicate code) would fail again on retry
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            System.err.println("[import] batch failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private WriteModel<Document> toModel(Document raw, String now, String importKey, Set<String> pendingIsbns, List<String> batchIsbns) {
+        Book book = toBook(raw);
+        if (book == null) { invalid.incrementAndGet(); return null; }
+        Document d = book.toDocument();
+        // carry the catalogue columns the UI shows; a Borrowed status with its borrower turns
+        // into a loan on inventory entries in catalogDocument
+        for (String extra : new String[]{"code", "name", "category", "status", "borrowedBy"}) {
+            Object v = raw.get(extra);
+            if (v != null && !String.valueOf(v).isEmpty()) d.put(extra, v);
+        }
+        LibraryManagementSystem.catalogDocument(d, now);
+        d.putIfAbsent("name", book.getTitle());
+        String isbn = book.getIsbn();
+        if (isbn == null || isbn.isEmpty()) {
+            return new UpdateOneModel<>(Filters.eq("importKey", importKey), new Document("$setOnInsert", d), new UpdateOptions().upsert(true));
+        }
+        if (!pendingIsbns.add(isbn)) { duplicates.incrementAndGet(); return null; }
+        batchIsbns.add(isbn);
+        d.remove("isbn");
+        return new UpdateOneModel<>(Filters.eq("isbn", isbn), new Document("$setOnInsert", d), new UpdateOptions().upsert(true));
+    }
+
+    private static Book toBook(Document raw) {
+        String title = str(raw, "title");
+        if (title == null) title = str(raw, "name");
+        if (title == null) return null;
+        String isbn = str(raw, "isbn");
+        String author = str(raw, "author");
+        if ("ebook".equalsIgnoreCase(str(raw, "type"))) return new EBook(isbn, title, author, str(raw, "downloadUrl"));
+        int copies = 1;
+        String c = str(raw, "copiesAvailable");
+        if (c != null) {
+            try { copies = Integer.parseInt(c.trim()); } catch (NumberFormatException e) { return null; }
+        }
+        return new PrintedBook(isbn, title, author, copies, copies > 0);
+    }
+
+    private static String str(Document d, String key) {
+        Object v = d.get(key);
+        if (v == null) return null;
+        String s = String.valueOf(v).trim();
+        return s.isEmpty() ? null : s;
+    }
+
+    private Progress snapshot() {
+        double secs = Math.max(1e-9, (System.nanoTime() - startedNanos) / 1e9);
+        return new Progress(read.get(), written.get(), duplicates.get(), invalid.get(), failed.get(), read.get() / secs);
+    }
+
+    private static long readCheckpoint(Path checkpoint) throws IOException {
+        if (!Files.exists(checkpoint)) return 0;
+        try {
+            return Long.parseLong(Files.readString(checkpoint).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Advances the checkpoint only across a contiguous run of finished batches. */
+    private static final class Committer {
+        private final Path file;
+        private final Map<Long, Long> finished = new LinkedHashMap<>();
+        private final TreeSet<Long> pendingStarts = new TreeSet<>();
+        private long committed;
+
+        Committer(Path file, long committed) {
+            this.file = file;
+            this.committed = committed;
+        }
+
+        synchronized void done(long fromRecord, long toRecord) {
+            finished.put(fromRecord, toRecord);
+            pendingStarts.add(fromRecord);
+            boolean moved = false;
+            while (!pendingStarts.isEmpty() && pendingStarts.first() == committed) {
+                long start = pendingStarts.pollFirst();
+                committed = finished.remove(start);
+                moved = true;
+            }
+            if (moved) save();
+        }
+
+        private void save() {
+            try {
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(tmp, Long.toString(committed));
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("[import] could not write checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    private interface RecordReader {
+        Document next() throws IOException;
+    }
+
+    private static final class JsonlRecords implements RecordReader {
+        private final BufferedReader in;
+
+        JsonlRecords(BufferedReader in) { this.in = in; }
+
+        @Override
+        public Document next() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    return Document.parse(line);
+                } catch (RuntimeException e) {
+                    return new Document(); // counted as invalid, keeps record numbering stable
+                }
+            }
+            return null;
+        }
+    }
+
+    /** RFC 4180 reader: quoted fields, doubled quotes and newlines inside quotes. */
+    private static final class CsvRecords implements RecordReader {
+        private final Reader in;
+        private final List<String> header;
+
+        CsvRecords(Reader in) throws IOException {
+            this.in = in;
+            List<String> h = row();
+            if (h != null && !h.isEmpty()) h.set(0, h.get(0).replace("\uFEFF", ""));
+            this.header = h == null ? List.of() : h;
+        }
+
+        @Override
+        public Document next() throws IOException {
+            List<String> cells;
+            do {
+                cells = row();
+                if (cells == null) return null;
+            } while (cells.size() == 1 && cells.get(0).isEmpty());
+            Document d = new Document();
+            for (int i = 0; i < header.size() && i < cells.size(); i++) d.append(header.get(i).trim(), cells.get(i));
+            return d;
+        }
+
+        private List<String> row() throws IOException {
+            List<String> cells = new ArrayList<>();
+            StringBuilder cur = new StringBuilder();
+            boolean quoted = false, any = false;
+            int c;
+            while ((c = in.read()) != -1) {
+                any = true;
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+                        int n = in.read();
+                        if (n == '"') cur.append('"');
+                        else { quoted = false; if (n != -1) in.reset(); }
+                    } else cur.append((char) c);
+                } else if (c == '"') quoted = true;
+                else if (c == ',') { cells.add(cur.toString()); cur.setLength(0); }
+                else if (c == '\n') break;
+                else if (c != '\r') cur.append((char) c);
+            }
+            if (!any) return null;
+            cells.add(cur.toString());
+            return cells;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+
+/**
+ * In-process inverted index over the catalogue's name, code, category and isbn fields.
+ *
+ * Each document gets an int ordinal; every token maps to a sorted postings list of
+ * (ordinal, field mask) pairs held in primitive arrays. Query terms are matched as
+ * prefixes through a sorted token dictionary and intersected, so "jav prog" finds
+ * "Java Programming". Results are ranked by which fields matched and whether the match
+ * was exact. A one-character term only matches whole tokens: as a prefix it would pull in a
+ * large share of the dictionary on the first keystroke. Longer prefixes expand to at most
+ * MAX_EXPANSION tokens, the first ones in dictionary order. The index is built once per
+ * collection and then kept current through {@link #put} / {@link #remove} as the UI writes.
+ *
+ * An update gives the document a new ordinal and leaves the old one dead; once dead
+ * ordinals outnumber live ones the survivors are renumbered in order, which keeps every
+ * postings list sorted, so memory follows the catalogue size rather than its churn.
+ */
+public final class CatalogSearchIndex {
+
+    private static final String[] FIELDS = {"code", "isbn", "name", "category"};
+    private static final int[] FIELD_WEIGHT = {6, 6, 4, 1};
+    private static final int MIN_PREFIX = 2;
+    private static final int COMPACT_MIN_DEAD = 4096;
+    // a term whose postings exceed 1/DENSE_FRACTION of all ordinals is merged through a flat array
+    private static final int DENSE_FRACTION = 8;
+    // a prefix is expanded to at most this many dictionary tokens; hyphen-joined ISBNs alone
+    // give every document a distinct token under "97"
+    private static final int MAX_EXPANSION = 10_000;
+    private static final ThreadLocal<int[]> DENSE_SCRATCH = ThreadLocal.withInitial(() -> new int[0]);
+    private static final Map<String, CatalogSearchIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Postings> dictionary = new TreeMap<>();
+    private final List<Object> idOf = new ArrayList<>();
+    private final List<String[]> tokensOf = new ArrayList<>();
+    private final Map<Object, Integer> ordinalOf = new HashMap<>();
+    private int dead;
+    private volatile boolean ready;
+
+    /** Shared index for a collection; empty until {@link #build} has run. */
+    public static CatalogSearchIndex forCollection(MongoCollection<Document> collection) {
+        return INDEXES.computeIfAbsent(collection.getNamespace().getFullName(), k -> new CatalogSearchIndex());
+    }
+
+    /** The shared index if it has been built, otherwise null. */
+    public static CatalogSearchIndex ifReady(MongoCollection<Document> collection) {
+        CatalogSearchIndex idx = INDEXES.get(collection.getNamespace().getFullName());
+        return idx != null && idx.ready ? idx : null;
+    }
+
+    public boolean isReady() { return ready; }
+
+    /** Stream the indexed fields of every document into the index. */
+    public void build(MongoCollection<Document> collection) {
+        for (Document d : collection.find().projection(Projections.include(FIELDS)).batchSize(5000)) put(d);
+        ready = true;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try { return ordinalOf.size(); } finally { lock.readLock().unlock(); }
+    }
+
+    /** Add or replace a document (only _id and the indexed fields are read). */
+    public void put(Document d) {
+        Object id = d.get("_id");
+        if (id == null) return;
+        lock.writeLock().lock();
+        try {
+            Integer existing = ordinalOf.remove(id);
+            if (existing != null) unindex(existing);
+            compactIfSparse();
+            int ord = idOf.size();
+            idOf.add(id);
+            ordinalOf.put(id, ord);
+            Map<String, Integer> masks = new HashMap<>();
+            for (int f = 0; f < FIELDS.length; f++) {
+                Object v = d.get(FIELDS[f]);
+                if (v == null) continue;
+                for (String t : tokenize(String.valueOf(v), FIELDS[f].equals("isbn"))) masks.merge(t, 1 << f, (a, b) -> a | b);
+            }
+            tokensOf.add(masks.keySet().toArray(new String[0]));
+            for (Map.Entry<String, Integer> e : masks.entrySet())
+                dictionary.computeIfAbsent(e.getKey(), k -> new Postings()).add(ord, e.getValue().byteValue());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Object id) {
+        lock.writeLock().lock();
+        try {
+            Integer ord = ordinalOf.remove(id);
+            if (ord != null) unindex(ord);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Ids of the best matches for a multi-term prefix query, best first. */
+    public List<Object> search(String query, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query, false)));
+        if (terms.isEmpty() || limit <= 0) return List.of();
+        lock.readLock().lock();
+        try {
+            int[] candidates = null;
+            int[] scores = null;
+            for (String term : terms) {
+                int[][] matched = matchTerm(term);
+                int[] ords = matched[0], termScores = matched[1];
+                if (candidates == null) { candidates = ords; scores = termScores; }
+                else {
+                    int[][] joined = intersect(candidates, scores, ords, termScores);
+                    candidates = joined[0]; scores = joined[1];
+                }
+                if (candidates.length == 0) return List.of();
+            }
+            // bounded min-heap keeps the top `limit` without sorting every candidate
+            PriorityQueue<int[]> top = new PriorityQueue<>((a, b) -> a[1] != b[1] ? Integer.compare(a[1], b[1]) : Integer.compare(b[0], a[0]));
+            for (int i = 0; i < candidates.length; i++) {
+                // candidates ascend, so a later one that only ties the weakest kept one loses to it
+                if (top.size() == limit && scores[i] <= top.peek()[1]) continue;
+                top.offer(new int[]{candidates[i], scores[i]});
+                if (top.size() > limit) top.poll();
+            }
+            Object[] out = new Object[top.size()];
+            for (int i = out.length - 1; i >= 0; i--) out[i] = idOf.get(top.poll()[0]);
+            return Arrays.asList(out);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static List<String> tokenize(String text, boolean isbn) {
+        List<String> out = new ArrayList<>();
+        if (text == null) return out;
+        String norm = Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}+", "").toLowerCase();
+        StringBuilder cur = new StringBuilder();
+        for (int i = 0; i <= norm.length(); i++) {
+            char c = i < norm.length() ? norm.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) cur.append(c);
+            else if (cur.length() > 0) { out.add(cur.toString()); cur.setLength(0); }
+        }
+        // hyphenated ISBNs are also searchable as one run of digits
+        if (isbn && out.size() > 1) out.add(String.join("", out));
+        return out;
+    }
+
+    // union of postings for every dictionary token starting with term, with per-ordinal scores
+    private int[][] matchTerm(String term) {
+        Map<String, Postings> range = term.length() < MIN_PREFIX
+                ? dictionary.subMap(term, true, term, true)
+                : dictionary.subMap(term, true, term + Character.MAX_VALUE, false);
+        // the first MAX_EXPANSION tokens in order, which include term itself when it is one
+        List<Map.Entry<String, Postings>> hits = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Postings> e : range.entrySet()) {
+            if (hits.size() == MAX_EXPANSION) break;
+            hits.add(e);
+            total += e.getValue().size;
+        }
+        if (total > idOf.size() / DENSE_FRACTION) return matchDense(hits, term.length());
+        // pack (ordinal, score) into longs so one primitive sort groups each ordinal with its best score last
+        long[] packed = new long[total];
+        int n = 0;
+        for (Map.Entry<String, Postings> e : hits) {
+            boolean exact = e.getKey().length() == term.length();
+            Postings p = e.getValue();
+            for (int i = 0; i < p.size; i++) packed[n++] = ((long) p.ords[i] << 32) | score(p.masks[i], exact);
+        }
+        Arrays.sort(packed);
+        int[] ords = new int[total], sc = new int[total];
+        int k = 0;
+        for (int i = 0; i < total; i++) {
+            int ord = (int) (packed[i] >>> 32);
+            if (i + 1 < total && (int) (packed[i + 1] >>> 32) == ord) continue;
+            ords[k] = ord;
+            sc[k++] = (int) packed[i];
+        }
+        return new int[][]{Arrays.copyOf(ords, k), Arrays.copyOf(sc, k)};
+    }
+
+    // a prefix shared by a large part of the catalogue (an ISBN prefix, say): keep the best
+    // score per ordinal in a flat array instead of sorting every posting
+    private int[][] matchDense(List<Map.Entry<String, Postings>> hits, int termLength) {
+        int n = idOf.size();
+        int[] best = DENSE_SCRATCH.get();
+        if (best.length < n) { best = new int[n + n / 2]; DENSE_SCRATCH.set(best); }
+        int count = 0;
+        for (Map.Entry<String, Postings> e : hits) {
+            boolean exact = e.getKey().length() == termLength;
+            Postings p = e.getValue();
+            for (int i = 0; i < p.size; i++) {
+                int ord = p.ords[i], sc = score(p.masks[i], exact);
+                if (best[ord] == 0) count++;
+                if (sc > best[ord]) best[ord] = sc;
+            }
+        }
+        int[] ords = new int[count], sc = new int[count];
+        int k = 0;
+        for (int ord = 0; ord < n && k < count; ord++) {
+            if (best[ord] == 0) continue;
+            ords[k] = ord;
+            sc[k++] = best[ord];
+            best[ord] = 0; // hand the scratch back zeroed
+        }
+        return new int[][]{ords, sc};
+    }
+
+    private static int score(byte mask, boolean exact) {
+        int s = 0;
+        for (int f = 0; f < FIELDS.length; f++) if ((mask & (1 << f)) != 0) s = Math.max(s, FIELD_WEIGHT[f]);
+        return exact ? s * 2 : s;
+    }
+
+    private static int[][] intersect(int[] a, int[] as, int[] b, int[] bs) {
+        int n = Math.min(a.length, b.length);
+        int[] o = new int[n], s = new int[n];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { o[k] = a[i]; s[k++] = as[i++] + bs[j++]; }
+        }
+        return new int[][]{Arrays.copyOf(o, k), Arrays.copyOf(s, k)};
+    }
+
+    private void unindex(int ord) {
+        for (String t : tokensOf.get(ord)) {
+            Postings p = dictionary.get(t);
+            if (p != null && p.remove(ord) && p.size == 0) dictionary.remove(t);
+        }
+        tokensOf.set(ord, new String[0]);
+        idOf.set(ord, null);
+        dead++;
+    }
+
+    // renumbers live ordinals 0..n-1 in their current order, so postings stay sorted in place
+    private void compactIfSparse() {
+        if (dead < COMPACT_MIN_DEAD || dead < ordinalOf.size()) return;
+        int[] remap = new int[idOf.size()];
+        int next = 0;
+        for (int ord = 0; ord < idOf.size(); ord++) {
+            if (idOf.get(ord) == null) continue;
+            remap[ord] = next;
+            idOf.set(next, idOf.get(ord));
+            tokensOf.set(next, tokensOf.get(ord));
+            next++;
+        }
+        idOf.subList(next, idOf.size()).clear();
+        tokensOf.subList(next, tokensOf.size()).clear();
+        for (Postings p : dictionary.values()) for (int i = 0; i < p.size; i++) p.ords[i] = remap[p.ords[i]];
+        ordinalOf.replaceAll((id, ord) -> remap[ord]);
+        dead = 0;
+    }
+
+    /** Sorted ordinals with their field masks; new ordinals are the largest, so adds are appends. */
+    private static final class Postings {
+        int[] ords = new int[4];
+        byte[] masks = new byte[4];
+        int size;
+
+        void add(int ord, byte mask) {
+            if (size == ords.length) {
+                ords = Arrays.copyOf(ords, size * 2);
+                masks = Arrays.copyOf(masks, size * 2);
+            }
+            ords[size] = ord;
+            masks[size++] = mask;
+        }
+
+        boolean remove(int ord) {
+            int i = Arrays.binarySearch(ords, 0, size, ord);
+            if (i < 0) return false;
+            System.arraycopy(ords, i + 1, ords, i, size - i - 1);
+            System.arraycopy(masks, i + 1, masks, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+
+/**
+ * Streams a collection to a JSONL or CSV file with flat memory use.
+ *
+ * The cursor uses a large batchSize and only the requested fields are fetched. JSONL rows are
+ * rendered straight from the raw BSON bytes (no Document decode). Output is encoded into one
+ * reusable direct buffer and written to a FileChannel, optionally through gzip.
+ *
+ * An optional [since, until) range on a time field (lastUpdated for products, timestamp for
+ * transactions) supports incremental exports; the bounds are compared as stored, so they must
+ * be ISO strings for lastUpdated and dates for timestamp.
+ *
+ * CSV columns are the given fields, or else the keys of the first document; fields that only
+ * later documents have are not exported. Dates become ISO-8601 instants, lists and embedded
+ * documents relaxed JSON.
+ */
+public final class CollectionExporter {
+
+    public enum Format { JSONL, CSV }
+
+    public record Options(Format format, boolean gzip, List<String> fields,
+                          String rangeField, Object since, Object until, int batchSize) {}
+
+    public record Result(long documents, long bytes, double seconds) {
+        @Override
+        public String toString() {
+            return String.format("%d documents, %.1f MB in %.1fs (%.0f docs/s)",
+                    documents, bytes / 1e6, seconds, seconds == 0 ? 0 : documents / seconds);
+        }
+    }
+
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final JsonWriterSettings JSON = JsonWriterSettings.builder().outputMode(JsonMode.RELAXED).build();
+
+    private CollectionExporter() {}
+
+    /** The field that carries modification time for a given collection name, or null. */
+    public static String defaultRangeField(String collection) {
+        switch (collection) {
+            case "products": return "lastUpdated";
+            case "transactions": return "timestamp";
+            default: return null;
+        }
+    }
+
+    public static Result export(MongoCollection<Document> collection, Path out, Options opts) throws IOException {
+        long t0 = System.nanoTime();
+        Bson filter = new Document();
+        if (opts.rangeField() != null) {
+            List<Bson> range = new ArrayList<>();
+            if (opts.since() != null) range.add(Filters.gte(opts.rangeField(), opts.since()));
+            if (opts.until() != null) range.add(Filters.lt(opts.rangeField(), opts.until()));
+            if (!range.isEmpty()) filter = Filters.and(range);
+        }
+        List<String> fields = opts.fields() == null ? List.of() : opts.fields();
+        Bson projection = fields.isEmpty()
+                ? ("users".equals(collection.getNamespace().getCollectionName()) ? Projections.exclude("password") : null)
+                : Projections.fields(Projections.include(fields), fields.contains("_id") ? new Document() : Projections.excludeId());
+
+        long docs = 0;
+        try (FileChannel file = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Sink sink = new Sink(file, opts.gzip())) {
+            if (opts.format() == Format.JSONL) {
+                MongoCollection<RawBsonDocument> raw = collection.withDocumentClass(RawBsonDocument.class);
+                for (RawBsonDocument d : raw.find(filter).projection(projection).batchSize(opts.batchSize())) {
+                    sink.append(d.toJson(JSON)).append('\n');
+                    docs++;
+                }
+            } else {
+                List<String> header = fields;
+                StringBuilder row = new StringBuilder(256);
+                for (Document d : collection.find(filter).projection(projection).batchSize(opts.batchSize())) {
+                    if (header.isEmpty()) header = new ArrayList<>(d.keySet()); // first row decides when no fields were given
+                    if (docs == 0) { csvRow(row, header, null); sink.append(row); }
+                    csvRow(row, header, d);
+                    sink.append(row);
+                    docs++;
+                }
+            }
+        }
+        return new Result(docs, Files.size(out), (System.nanoTime() - t0) / 1e9);
+    }
+
+    // header row when d == null
+    private static void csvRow(StringBuilder row, List<String> header, Document d) {
+        row.setLength(0);
+        for (int i = 0; i < header.size(); i++) {
+            if (i > 0) row.append(',');
+            Object v = d == null ? header.get(i) : d.get(header.get(i));
+            if (v == null) continue;
+            String s = csvValue(v);
+            if (s.indexOf(',') >= 0 || s.indexOf('"') >= 0 || s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0) {
+                row.append('"').append(s.replace("\"", "\"\"")).append('"');
+            } else {
+                row.append(s);
+            }
+        }
+        row.append('\n');
+    }
+
+    private static String csvValue(Object v) {
+        if (v instanceof Date date) return date.toInstant().toString();
+        if (v instanceof Document doc) return doc.toJson(JSON);
+        if (v instanceof List<?> list) {
+            // the codecs only render documents, so render {"v": [...]} and keep the array
+            String json = new Document("v", list).toJson(JSON);
+            return json.substring(json.indexOf(':') + 1, json.length() - 1).trim();
+        }
+        return String.valueOf(v);
+    }
+
+    /** UTF-8 encodes into one direct buffer and drains it to the channel when full. */
+    private static final class Sink implements AutoCloseable {
+        private final WritableByteChannel channel;
+        private final OutputStream gzip;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+        Sink(FileChannel file, boolean gzip) throws IOException {
+            if (gzip) {
+                this.gzip = new GZIPOutputStream(Channels.newOutputStream(file), 1 << 16);
+                this.channel = Channels.newChannel(this.gzip);
+            } else {
+                this.gzip = null;
+                this.channel = file;
+            }
+        }
+
+        Sink append(CharSequence s) throws IOException {
+            CharBuffer in = CharBuffer.wrap(s);
+            while (true) {
+                CoderResult r = encoder.encode(in, buf, false);
+                if (r.isOverflow()) drain();
+                else break;
+            }
+            return this;
+        }
+
+        Sink append(char c) throws IOException {
+            if (!buf.hasRemaining()) drain();
+            if (c < 0x80) buf.put((byte) c);
+            else append(String.valueOf(c));
+            return this;
+        }
+
+        private void drain() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) channel.write(buf);
+            buf.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            drain();
+            if (gzip != null) gzip.close(); // writes the gzip trailer
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package service;
+
+import static com.mongodb.client.model.Filters.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+
+/**
+ * Chooses which per-copy document a borrow claims when a title is stored one document per copy.
+ *
+ * Taking the first match sends every concurrent borrower of a popular title to the same
+ * document, so they all queue on one write. In STRIPED mode the selector reads the ids of up
+ * to {@link #DEFAULT_WIDTH} available copies and claims a random one by _id under the same
+ * guard. A claim that loses the race counts as a conflict; the borrower backs off with full
+ * jitter and tries again from a fresh candidate list, at most maxAttempts times, then falls
+ * back to a plain first-match claim so a title with copies left is never reported as gone.
+ *
+ * STRIPED costs a read plus a claim on every attempt, where FIRST is a single round trip, so
+ * it only pays off when many readers borrow the same title at once; that has not been
+ * measured against a real server yet. One selector exists per database (see {@link #of});
+ * the mode defaults to FIRST and can be switched with -Dlibrary.checkout.selection=STRIPED.
+ */
+public final class CopySelector {
+
+    public enum Mode { FIRST, STRIPED }
+
+    public static final int DEFAULT_WIDTH = 16;
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final long DEFAULT_BACKOFF_MICROS = 200;
+
+    private static final Map<String, CopySelector> SELECTORS = new ConcurrentHashMap<>();
+    private static final FindOneAndUpdateOptions AFTER = new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER);
+
+    public record Stats(Mode mode, long claims, long attempts, long conflicts, long fallbacks, long misses) {
+        /** Share of claim attempts that found their chosen copy already taken. */
+        public double conflictRate() { return attempts == 0 ? 0 : (double) conflicts / attempts; }
+
+        @Override
+        public String toString() {
+            return String.format("mode=%s claims=%d attempts=%d conflicts=%d (%.1f%%) fallbacks=%d misses=%d",
+                    mode, claims, attempts, conflicts, conflictRate() * 100, fallbacks, misses);
+        }
+    }
+
+    private final Mode mode;
+    private final int width;
+    private final int maxAttempts;
+    private final long backoffMicros;
+
+    private final AtomicLong claims = new AtomicLong();
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CopySelector(Mode mode, int width, int maxAttempts, long backoffMicros) {
+        this.mode = mode;
+        this.width = width;
+        this.maxAttempts = maxAttempts;
+        this.backoffMicros = backoffMicros;
+    }
+
+    /** Shared selector for db's products collection. */
+    public static CopySelector of(MongoDatabase db) {
+        return SELECTORS.computeIfAbsent(MongoClientRegistry.keyOf(db), k -> {
+            String mode = System.getProperty("library.checkout.selection", Mode.FIRST.name());
+            return new CopySelector(Mode.valueOf(mode.toUpperCase()), DEFAULT_WIDTH, DEFAULT_MAX_ATTEMPTS, DEFAULT_BACKOFF_MICROS);
+        });
+    }
+
+    public static Map<String, Stats> statsAll() {
+        Map<String, Stats> out = new ConcurrentHashMap<>();
+        SELECTORS.forEach((k, v) -> out.put(k, v.stats()));
+        return out;
+    }
+
+    public Stats stats() {
+        return new Stats(mode, claims.get(), attempts.get(), conflicts.get(), fallbacks.get(), misses.get());
+    }
+
+    public void reset() {
+        claims.set(0); attempts.set(0); conflicts.set(0); fallbacks.set(0); misses.set(0);
+    }
+
+    /**
+     * Claims one document matching candidates and guard, applying update; returns it as updated,
+     * or null when no copy is available. collation applies to the candidate filter only.
+     */
+    public Document claim(MongoCollection<Document> books, Bson candidates, Bson guard, Bson update, Collation collation) {
+        if (mode == Mode.STRIPED) {
+            for (int attempt = 0; attempt < maxAttempts; attempt++) {
+                List<Object> ids = candidateIds(books, candidates, collation);
+                if (ids.isEmpty()) { misses.incrementAndGet(); return null; }
+                Object id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                attempts.incrementAndGet();
+                // the guard is re-checked on the server, so a copy taken since the read simply misses
+                Document doc = books.findOneAndUpdate(and(eq("_id", id), guard), update, AFTER);
+                if (doc != null) { claims.incrementAndGet(); return doc; }
+                conflicts.incrementAndGet();
+                if (attempt + 1 < maxAttempts) backoff(attempt);
+            }
+            fallbacks.incrementAndGet();
+        }
+        FindOneAndUpdateOptions opts = new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER);
+        if (collation != null) opts.collation(collation);
+        attempts.incrementAndGet();
+        Document doc = books.findOneAndUpdate(candidates, update, opts);
+        if (doc != null) claims.incrementAndGet();
+        else misses.incrementAndGet();
+        return doc;
+    }
+
+    private List<Object> candidateIds(MongoCollection<Document> books, Bson candidates, Collation collation) {
+        FindIterable<Document> find = books.find(candidates).projection(Projections.include("_id")).limit(width);
+        if (collation != null) find.collation(collation);
+        List<Object> ids = new ArrayList<>(width);
+        for (Document d : find) ids.add(d.get("_id"));
+        return ids;
+    }
+
+    // full jitter: sleep a random slice of an exponentially growing window
+    private void backoff(int attempt) {
+        long window = backoffMicros << attempt;
+        LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(window + 1) * 1000);
+    }
+}
@@ -0,0 +1,126 @@
+package service;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+
+/**
+ * Flow.Publisher over a sync driver query. Each subscriber gets its own cursor, iterated on
+ * the given executor (a virtual thread in practice) only while it has outstanding demand, so
+ * a slow consumer stops the next getMore instead of buffering the collection in memory.
+ * The cursor's batch size follows the first request, capped at maxBatch. Every signal to
+ * the subscriber comes from that thread, including the error for a non-positive request.
+ */
+public final class CursorPublisher<T> implements Flow.Publisher<T> {
+
+    private final Supplier<MongoIterable<T>> query;
+    private final Executor executor;
+    private final int maxBatch;
+
+    public CursorPublisher(Supplier<MongoIterable<T>> query, Executor executor, int maxBatch) {
+        this.query = query;
+        this.executor = executor;
+        this.maxBatch = maxBatch;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Subscription s = new Subscription(subscriber);
+        subscriber.onSubscribe(s);
+    }
+
+    private final class Subscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicBoolean started = new AtomicBoolean();
+        // a ReentrantLock rather than a monitor: waiting on it unmounts the virtual thread
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition wanted = lock.newCondition();
+        private long demand;
+        private volatile boolean cancelled;
+        // set by request(n <= 0); the drain thread delivers it, so onError never runs on the caller
+        private volatile Throwable invalid;
+
+        Subscription(Flow.Subscriber<? super T> subscriber) { this.subscriber = subscriber; }
+
+        @Override
+        public void request(long n) {
+            lock.lock();
+            try {
+                if (cancelled) return;
+                if (n <= 0) {
+                    if (invalid == null) invalid = new IllegalArgumentException("request must be positive, was " + n);
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n; // saturate on overflow
+                }
+                wanted.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (started.compareAndSet(false, true)) {
+                int batch = (int) Math.max(1, Math.min(n, maxBatch));
+                executor.execute(() -> drain(batch));
+            }
+        }
+
+        /**
+         * Only flags the subscription; the drain thread closes the cursor itself once it sees
+         * the flag, so a close never races a getMore blocked in hasNext on another thread.
+         */
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                wanted.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void drain(int batch) {
+            if (cancelled) return;
+            if (invalid != null) { fail(invalid); return; } // no cursor for a subscription that is already void
+            try (MongoCursor<T> c = query.get().batchSize(batch).cursor()) {
+                while (awaitDemand()) {
+                    // hasNext blocks for the next getMore only once the consumer wants more
+                    if (!c.hasNext()) break;
+                    T item = c.next();
+                    if (cancelled) return;
+                    subscriber.onNext(item);
+                }
+                if (cancelled) return;
+                if (invalid != null) fail(invalid);
+                else subscriber.onComplete();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                if (!cancelled) subscriber.onError(e);
+            }
+        }
+
+        // rule 3.9: the subscription is over before the subscriber hears why
+        private void fail(Throwable e) {
+            cancel();
+            subscriber.onError(e);
+        }
+
+        /** Waits for demand and takes one unit of it; false once cancelled or sent a bad request. */
+        private boolean awaitDemand() throws InterruptedException {
+            lock.lock();
+            try {
+                while (demand == 0 && !cancelled && invalid == null) wanted.await();
+                if (cancelled || invalid != null) return false;
+                if (demand != Long.MAX_VALUE) demand--;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
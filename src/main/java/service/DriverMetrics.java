@@ -0,0 +1,280 @@
+package service;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+import javax.management.ObjectName;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.BsonDocument;
+import org.bson.BsonReader;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+/**
+ * Process-wide driver metrics: per command name counts, failures, latency and wire bytes,
+ * plus connection pool check-outs and how long they waited. MongoClientRegistry attaches the
+ * one instance to every client it creates, and it is published over JMX as
+ * library:type=DriverMetrics (jconsole / VisualVM) as well as read by the UI's Performance panel.
+ *
+ * Byte counts are the BSON size of the command and reply documents, which is close to but
+ * not exactly what went over the wire (no message headers, no compression). Documents still
+ * backed by the wire buffer, recognised by {@link BsonDocument#asBsonReader} handing out a
+ * binary reader, are measured from their length prefix; anything else (commands the driver
+ * rebuilt, e.g. inserts with a document sequence) would have to be re-encoded, so only one
+ * in SAMPLE_EVERY of those is encoded and its size counted SAMPLE_EVERY times.
+ */
+public final class DriverMetrics implements CommandListener, ConnectionPoolListener, DriverMetricsMXBean {
+
+    public static final String OBJECT_NAME = "library:type=DriverMetrics";
+
+    private static final DriverMetrics INSTANCE = new DriverMetrics();
+    private static final BsonDocumentCodec CODEC = new BsonDocumentCodec();
+    private static final int SAMPLE_EVERY = 16;
+    private static final ThreadLocal<BasicOutputBuffer> SCRATCH = ThreadLocal.withInitial(BasicOutputBuffer::new);
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (Exception | LinkageError e) {
+            System.err.println("[metrics] JMX registration failed: " + e.getMessage());
+        }
+    }
+
+    /** One command name's figures at the time of the snapshot. */
+    public record CommandStats(String command, long count, long failures, double meanMillis,
+                               double p50Millis, double p99Millis, double maxMillis, long bytesSent, long bytesReceived) {}
+
+    public record PoolStats(long checkOuts, long failures, long inUse, double waitP50Millis, double waitP99Millis, double waitMaxMillis) {
+        @Override
+        public String toString() {
+            return String.format("checkouts=%d failed=%d inUse=%d wait p50=%.2fms p99=%.2fms max=%.2fms",
+                    checkOuts, failures, inUse, waitP50Millis, waitP99Millis, waitMaxMillis);
+        }
+    }
+
+    private final Map<String, Command> commands = new ConcurrentHashMap<>();
+    private final AtomicLong checkOuts = new AtomicLong();
+    private final AtomicLong checkIns = new AtomicLong();
+    private final AtomicLong checkOutFailures = new AtomicLong();
+    private final Histogram poolWait = new Histogram();
+
+    private DriverMetrics() {}
+
+    public static DriverMetrics get() { return INSTANCE; }
+
+    // --- listener callbacks -------------------------------------------------------------
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        Command c = command(event.getCommandName());
+        c.bytesSent.add(sizeOf(event.getCommand(), c.sentEncodes));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Command c = command(event.getCommandName());
+        c.latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        c.bytesReceived.add(sizeOf(event.getResponse(), c.receivedEncodes));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        Command c = command(event.getCommandName());
+        c.latency.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+        c.failures.increment();
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        checkOuts.incrementAndGet();
+        poolWait.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        checkIns.incrementAndGet();
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkOutFailures.incrementAndGet();
+        poolWait.record(event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    // --- snapshots ----------------------------------------------------------------------
+
+    /** Per-command figures, busiest first. */
+    public List<CommandStats> commands() {
+        List<CommandStats> out = new ArrayList<>();
+        commands.forEach((name, c) -> out.add(c.snapshot(name)));
+        out.sort(Comparator.comparingLong(CommandStats::count).reversed());
+        return out;
+    }
+
+    public PoolStats pool() {
+        long out = checkOuts.get();
+        return new PoolStats(out, checkOutFailures.get(), out - checkIns.get(),
+                poolWait.percentileMillis(50), poolWait.percentileMillis(99), poolWait.maxMillis());
+    }
+
+    @Override
+    public synchronized void reset() {
+        commands.clear();
+        poolWait.clear();
+        checkOutFailures.set(0);
+        // checkOuts/checkIns keep counting so inUse stays right
+    }
+
+    // --- MXBean -------------------------------------------------------------------------
+
+    @Override public long getCommandCount() { return commands().stream().mapToLong(CommandStats::count).sum(); }
+    @Override public long getFailedCommandCount() { return commands().stream().mapToLong(CommandStats::failures).sum(); }
+    @Override public long getBytesSent() { return commands().stream().mapToLong(CommandStats::bytesSent).sum(); }
+    @Override public long getBytesReceived() { return commands().stream().mapToLong(CommandStats::bytesReceived).sum(); }
+    @Override public Map<String, Long> getCommandCounts() {
+        Map<String, Long> out = new LinkedHashMap<>();
+        for (CommandStats s : commands()) out.put(s.command(), s.count());
+        return out;
+    }
+    @Override public Map<String, Double> getCommandMeanMillis() { return byCommand(CommandStats::meanMillis); }
+    @Override public Map<String, Double> getCommandP99Millis() { return byCommand(CommandStats::p99Millis); }
+    @Override public long getConnectionsInUse() { return pool().inUse(); }
+    @Override public long getConnectionCheckOuts() { return checkOuts.get(); }
+    @Override public long getConnectionCheckOutFailures() { return checkOutFailures.get(); }
+    @Override public double getPoolWaitP99Millis() { return poolWait.percentileMillis(99); }
+    @Override public double getPoolWaitMaxMillis() { return poolWait.maxMillis(); }
+
+    @Override
+    public List<String> getSummary() {
+        List<String> out = new ArrayList<>();
+        for (CommandStats s : commands()) {
+            out.add(String.format("%s n=%d failed=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms sent=%dB received=%dB",
+                    s.command(), s.count(), s.failures(), s.meanMillis(), s.p50Millis(), s.p99Millis(), s.maxMillis(),
+                    s.bytesSent(), s.bytesReceived()));
+        }
+        out.add("pool " + pool());
+        return out;
+    }
+
+    private Map<String, Double> byCommand(ToDoubleFunction<CommandStats> f) {
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (CommandStats s : commands()) out.put(s.command(), f.applyAsDouble(s));
+        return out;
+    }
+
+    private Command command(String name) {
+        return commands.computeIfAbsent(name, k -> new Command());
+    }
+
+    private static long sizeOf(BsonDocument d, AtomicLong encodes) {
+        if (d == null) return 0;
+        if (d instanceof RawBsonDocument raw) return raw.getByteBuffer().remaining();
+        // only public API: a document over BSON bytes reads through a binary reader, a decoded
+        // one through a BsonDocumentReader, which costs nothing to create
+        try (BsonReader r = d.asBsonReader()) {
+            // a BSON document starts with its own length; read it instead of walking the fields
+            if (r instanceof BsonBinaryReader br) return br.getBsonInput().readInt32();
+        } catch (RuntimeException e) {
+            return 0; // the driver may have released the payload already; not worth failing the command over
+        }
+        if (encodes.getAndIncrement() % SAMPLE_EVERY != 0) return 0;
+        BasicOutputBuffer buf = SCRATCH.get();
+        buf.truncateToPosition(0);
+        try (BsonBinaryWriter w = new BsonBinaryWriter(buf)) {
+            CODEC.encode(w, d, EncoderContext.builder().build());
+        } catch (RuntimeException e) {
+            return 0;
+        }
+        return (long) buf.getPosition() * SAMPLE_EVERY;
+    }
+
+    private static final class Command {
+        final Histogram latency = new Histogram();
+        final LongAdder failures = new LongAdder();
+        final LongAdder bytesSent = new LongAdder();
+        final LongAdder bytesReceived = new LongAdder();
+        final AtomicLong sentEncodes = new AtomicLong();
+        final AtomicLong receivedEncodes = new AtomicLong();
+
+        CommandStats snapshot(String name) {
+            return new CommandStats(name, latency.count(), failures.sum(), latency.meanMillis(),
+                    latency.percentileMillis(50), latency.percentileMillis(99), latency.maxMillis(),
+                    bytesSent.sum(), bytesReceived.sum());
+        }
+    }
+
+    /**
+     * Lock-free latency histogram with power-of-two microsecond buckets (1us .. ~35min).
+     * Percentiles are reported as the upper bound of the bucket they fall in, so they are
+     * accurate to within a factor of two; the mean and max are exact.
+     */
+    static final class Histogram {
+        private static final int BUCKETS = 32;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long micros = Math.max(1, nanos / 1000);
+            int b = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros - 1));
+            buckets.incrementAndGet(b);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        long count() { return count.sum(); }
+
+        double meanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+        }
+
+        double maxMillis() { return maxNanos.get() / 1e6; }
+
+        double percentileMillis(double p) {
+            long n = 0;
+            long[] snap = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) { snap[i] = buckets.get(i); n += snap[i]; }
+            if (n == 0) return 0;
+            long rank = (long) Math.ceil(p / 100.0 * n);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snap[i];
+                if (seen >= rank) return Math.min((1L << i) / 1000.0, maxMillis());
+            }
+            return maxMillis();
+        }
+
+        void clear() {
+            for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+            count.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package service;
+
+import java.util.List;
+import java.util.Map;
+
+/** JMX view of {@link DriverMetrics}, registered as library:type=DriverMetrics. */
+public interface DriverMetricsMXBean {
+    long getCommandCount();
+    long getFailedCommandCount();
+    long getBytesSent();
+    long getBytesReceived();
+    Map<String, Long> getCommandCounts();
+    Map<String, Double> getCommandMeanMillis();
+    Map<String, Double> getCommandP99Millis();
+    long getConnectionsInUse();
+    long getConnectionCheckOuts();
+    long getConnectionCheckOutFailures();
+    double getPoolWaitP99Millis();
+    double getPoolWaitMaxMillis();
+    List<String> getSummary();
+    void reset();
+}
@@ -0,0 +1,139 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CollationStrength;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+
+/**
+ * Declares the indexes the service and UI queries rely on and creates them once per database.
+ * createIndex is idempotent on the server, but we still remember which databases were
+ * bootstrapped so constructing a LibraryManagementSystem per action stays cheap.
+ */
+public final class IndexManager {
+
+    /** Case-insensitive comparison used by the name index and by title lookups. */
+    public static final Collation CASE_INSENSITIVE = Collation.builder()
+            .locale("en")
+            .collationStrength(CollationStrength.SECONDARY)
+            .build();
+
+    public record IndexSpec(String collection, String name, Bson keys, IndexOptions options) {}
+
+    private static final List<IndexSpec> SPECS = List.of(
+            new IndexSpec("users", "username_unique", Indexes.ascending("username"),
+                    new IndexOptions().name("username_unique").unique(true)),
+            // covers LibraryManagementSystem.listUserSummaries
+            new IndexSpec("users", "username_role", Indexes.ascending("username", "role"),
+                    new IndexOptions().name("username_role")),
+            // code is optional (books added through addBook have none, older UI rows have ""),
+            // so only enforce it on non-empty strings
+            new IndexSpec("products", "code_unique", Indexes.ascending("code"),
+                    new IndexOptions().name("code_unique").unique(true)
+                            .partialFilterExpression(Filters.gt("code", ""))),
+            // several copy documents may share an ISBN, so this one is not unique
+            new IndexSpec("products", "isbn", Indexes.ascending("isbn"),
+                    new IndexOptions().name("isbn")),
+            // upsert key of imported rows without an ISBN; unique so concurrent upserts cannot both insert
+            new IndexSpec("products", "importKey_unique", Indexes.ascending("importKey"),
+                    new IndexOptions().name("importKey_unique").unique(true)
+                            .partialFilterExpression(Filters.exists("importKey"))),
+            new IndexSpec("products", "status_borrowedBy", Indexes.ascending("status", "borrowedBy"),
+                    new IndexOptions().name("status_borrowedBy")),
+            new IndexSpec("products", "name_ci", Indexes.ascending("name", "status"),
+                    new IndexOptions().name("name_ci").collation(CASE_INSENSITIVE)),
+            // multikey: loansOf and the return guard on inventory entries
+            new IndexSpec("products", "activeLoans_username", Indexes.ascending("activeLoans.username"),
+                    new IndexOptions().name("activeLoans_username")),
+            // watermark for incremental table refresh
+            new IndexSpec("products", "lastUpdated", Indexes.ascending("lastUpdated"),
+                    new IndexOptions().name("lastUpdated")),
+            // windowed leaderboards in BorrowStats
+            new IndexSpec(BorrowStats.COLLECTION, "kind_day", Indexes.ascending("kind", "day"),
+                    new IndexOptions().name("kind_day"))
+            // transactions indexes depend on its layout, see TransactionHistory.indexSpecs
+    );
+
+    private static final int INDEX_OPTIONS_CONFLICT = 85;
+    private static final int INDEX_KEY_SPECS_CONFLICT = 86;
+
+    private static final Set<String> BOOTSTRAPPED = ConcurrentHashMap.newKeySet();
+
+    private IndexManager() {}
+
+    /** Declared indexes for db, including the ones for its transactions layout. */
+    public static List<IndexSpec> specs(MongoDatabase db) {
+        List<IndexSpec> all = new ArrayList<>(SPECS);
+        all.addAll(TransactionHistory.of(db).indexSpecs());
+        return all;
+    }
+
+    /**
+     * Create all declared indexes in db, once per process. An existing index with a declared
+     * name but different options (an older declaration) is dropped and created again.
+     * Failures are logged, not thrown.
+     */
+    public static void ensureIndexes(MongoDatabase db) {
+        if (db == null || !BOOTSTRAPPED.add(MongoClientRegistry.keyOf(db))) return;
+        for (IndexSpec spec : specs(db)) {
+            MongoCollection<Document> col = db.getCollection(spec.collection());
+            try {
+                try {
+                    col.createIndex(spec.keys(), spec.options());
+                } catch (MongoCommandException e) {
+                    if (e.getErrorCode() != INDEX_OPTIONS_CONFLICT && e.getErrorCode() != INDEX_KEY_SPECS_CONFLICT) throw e;
+                    System.err.println("[index] " + db.getName() + "." + spec.collection() + "." + spec.name() + " changed, rebuilding");
+                    col.dropIndex(spec.name());
+                    col.createIndex(spec.keys(), spec.options());
+                }
+            } catch (Exception e) {
+                System.err.println("[index] " + db.getName() + "." + spec.collection() + "." + spec.name() + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lists declared indexes that are missing and existing indexes that have not been used
+     * since the server started (per $indexStats). The _id index is never reported as unused.
+     */
+    public static List<String> report(MongoDatabase db) {
+        List<String> out = new ArrayList<>();
+        List<IndexSpec> specs = specs(db);
+        Set<String> collections = new HashSet<>();
+        for (IndexSpec spec : specs) collections.add(spec.collection());
+        for (String c : collections) {
+            MongoCollection<Document> col = db.getCollection(c);
+            Set<String> present = new HashSet<>();
+            for (Document idx : col.listIndexes()) present.add(idx.getString("name"));
+            for (IndexSpec spec : specs) {
+                if (spec.collection().equals(c) && !present.contains(spec.name()))
+                    out.add("missing: " + c + "." + spec.name());
+            }
+            try {
+                for (Document st : col.aggregate(List.of(new Document("$indexStats", new Document())))) {
+                    String name = st.getString("name");
+                    Document accesses = st.get("accesses", Document.class);
+                    Number ops = accesses == null ? null : accesses.get("ops", Number.class);
+                    if (!"_id_".equals(name) && ops != null && ops.longValue() == 0)
+                        out.add("unused: " + c + "." + name);
+                }
+            } catch (Exception e) {
+                out.add("stats unavailable for " + c + ": " + e.getMessage());
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,145 @@
+package service;
+
+import static com.mongodb.client.model.Filters.*;
+import static com.mongodb.client.model.Updates.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * Folds one-document-per-copy catalogue entries into inventory entries.
+ *
+ * An inventory entry is one with copiesTotal; the borrow path tells the two shapes apart by
+ * that field alone. Entries that carry copiesAvailable without copiesTotal (printed books
+ * added or imported before inventory tracking) and inventory entries still marked Borrowed
+ * are brought into shape in place by {@link #normalize}: the borrower becomes an activeLoans
+ * entry and the counts are corrected. Entries without copiesAvailable are grouped by ISBN
+ * (or by case-insensitive name when there is no ISBN). The oldest document of each group is kept and given copiesTotal,
+ * copiesAvailable and an activeLoans entry for every borrowed copy; the rest are deleted.
+ * The keeper records the ids it absorbed in mergedFrom, so a run interrupted between the
+ * update and the delete can be repeated without counting those copies twice.
+ *
+ * Run it while nobody is borrowing: a checkout that lands between reading a group and
+ * writing its keeper would be lost.
+ */
+public final class InventoryMigration {
+
+    public record Result(int titles, long copies, long deleted, long normalized) {
+        @Override
+        public String toString() {
+            return String.format("%d titles from %d copy documents, %d documents removed, %d counted entries normalized",
+                    titles, copies, deleted, normalized);
+        }
+    }
+
+    private InventoryMigration() {}
+
+    public static Result consolidate(MongoCollection<Document> products) {
+        Set<Object> absorbed = new HashSet<>();
+        for (Document d : products.find(exists("mergedFrom")).projection(Projections.include("mergedFrom"))) {
+            absorbed.addAll(d.getList("mergedFrom", Object.class));
+        }
+
+        Map<String, List<Document>> groups = new LinkedHashMap<>();
+        List<Object> leftovers = new ArrayList<>();
+        long copies = 0;
+        for (Document d : products.find(and(exists("copiesAvailable", false), exists("copiesTotal", false)))
+                .projection(Projections.include("isbn", "name", "status", "borrowedBy", "lastUpdated"))
+                .sort(Sorts.ascending("_id"))) {
+            if (absorbed.contains(d.get("_id"))) { leftovers.add(d.get("_id")); continue; }
+            groups.computeIfAbsent(groupKey(d), k -> new ArrayList<>()).add(d);
+            copies++;
+        }
+
+        String now = Instant.now().toString();
+        long deleted = 0;
+        for (List<Document> group : groups.values()) {
+            Document keeper = group.get(0);
+            List<Object> others = new ArrayList<>();
+            List<Document> loans = new ArrayList<>();
+            int available = 0;
+            for (Document d : group) {
+                if (d != keeper) others.add(d.get("_id"));
+                String by = d.getString("borrowedBy");
+                if ("Borrowed".equals(d.getString("status")) && by != null) {
+                    String since = d.getString("lastUpdated");
+                    loans.add(new Document("username", by).append("since", since != null ? since : now));
+                } else {
+                    available++;
+                }
+            }
+            products.updateOne(eq("_id", keeper.get("_id")), combine(
+                    set("copiesTotal", group.size()),
+                    set("copiesAvailable", available),
+                    set("activeLoans", loans),
+                    set("mergedFrom", others),
+                    set("status", "Available"),
+                    unset("borrowedBy"),
+                    set("lastUpdated", now)));
+            if (!others.isEmpty()) deleted += products.deleteMany(in("_id", others)).getDeletedCount();
+        }
+        if (!leftovers.isEmpty()) deleted += products.deleteMany(in("_id", leftovers)).getDeletedCount();
+
+        long normalized = 0;
+        Bson misshapen = and(exists("copiesAvailable"),
+                or(exists("copiesTotal", false), eq("status", "Borrowed"), and(exists("borrowedBy"), ne("borrowedBy", null))));
+        for (Document d : products.find(misshapen)
+                .projection(Projections.include("copiesAvailable", "copiesTotal", "activeLoans", "status", "borrowedBy", "lastUpdated"))) {
+            normalize(d, now);
+            products.updateOne(eq("_id", d.get("_id")), combine(
+                    set("copiesTotal", d.get("copiesTotal")),
+                    set("copiesAvailable", d.get("copiesAvailable")),
+                    set("activeLoans", d.get("activeLoans")),
+                    set("status", "Available"),
+                    unset("borrowedBy"),
+                    set("lastUpdated", now)));
+            normalized++;
+        }
+        return new Result(groups.size(), copies, deleted, normalized);
+    }
+
+    /**
+     * Puts an entry with copiesAvailable into inventory shape, in place: a Borrowed status
+     * with a borrower becomes an activeLoans entry, copiesTotal is filled in where missing
+     * (copiesAvailable was never decremented before inventory tracking, so it counts every
+     * copy, and at least the lent ones), copiesAvailable becomes total minus loans, status is
+     * Available and borrowedBy goes. Entries without copiesAvailable are left alone.
+     */
+    public static Document normalize(Document d, String now) {
+        if (!(d.get("copiesAvailable") instanceof Number avail)) return d;
+        List<Document> loans = new ArrayList<>(d.getList("activeLoans", Document.class, List.of()));
+        String by = d.getString("borrowedBy");
+        if ("Borrowed".equals(d.getString("status")) && by != null && !by.isBlank()
+                && loans.stream().noneMatch(l -> by.equals(l.getString("username")))) {
+            String since = d.getString("lastUpdated");
+            loans.add(new Document("username", by).append("since", since != null ? since : now));
+        }
+        int total = d.get("copiesTotal") instanceof Number t ? t.intValue() : avail.intValue();
+        total = Math.max(total, loans.size());
+        d.put("copiesTotal", total);
+        d.put("copiesAvailable", total - loans.size());
+        d.put("activeLoans", loans);
+        d.put("status", "Available");
+        d.remove("borrowedBy");
+        return d;
+    }
+
+    private static String groupKey(Document d) {
+        String isbn = d.getString("isbn");
+        if (isbn != null && !isbn.isBlank()) return "isbn:" + isbn.trim();
+        String name = d.getString("name");
+        return "name:" + (name == null ? d.get("_id") : name.trim().toLowerCase());
+    }
+}
@@ -4,61 +4,97 @@ import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Updates.*;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.result.DeleteResult;
 
-import model.Admin;
-import model.Librarian;
-import model.Reader;
+import model.Codecs;
 import model.Student;
 import model.User;
 import model.Book;
 
 public class LibraryManagementSystem {
+    /** What listing screens need about a user; never carries the password. */
+    public record UserSummary(String username, String role) {}
+
+    /** One catalogue row for listings; date is createdDate, or lastUpdated for older rows. */
+    public record BookSummary(String isbn, String name, String status, String category, String date) {}
+
+    // username_role covers this projection, so the listing is answered from the index alone
+    private static final Bson USER_SUMMARY_FIELDS = Projections.fields(
+            Projections.include("username", "role"), Projections.excludeId());
+    private static final Bson BOOK_SUMMARY_FIELDS = Projections.fields(
+            Projections.include("isbn", "name", "status", "category", "createdDate", "lastUpdated"), Projections.excludeId());
+    // beyond this many documents (per-copy titles) a resolved title is claimed by its name instead
+    private static final int MAX_TITLE_CANDIDATES = 64;
+
     private final MongoCollection<Document> users;
     private final MongoCollection<Document> books;
     private final MongoCollection<Document> transactions;
+    private final TransactionHistory history;
+    private final BorrowStats borrowStats;
+    private final AlsoBorrowed alsoBorrowed;
+    // typed views that decode straight into the model classes via model.Codecs
+    private final MongoCollection<User> userRows;
+    private final MongoCollection<Book> bookRows;
+    private final UserCache userCache;
+    private final CopySelector copies;
+    private final TitleResolver titles;
 
     public LibraryManagementSystem(MongoDatabase db) {
         this.users = db.getCollection("users");
         this.books = db.getCollection("products");  // Changed from "books" to "products"
-        this.transactions = db.getCollection("transactions");
+        this.transactions = db.getCollection(TransactionHistory.COLLECTION);
+        this.history = TransactionHistory.of(db);
+        this.borrowStats = BorrowStats.of(db);
+        this.alsoBorrowed = AlsoBorrowed.of(db);
+        this.userRows = users.withDocumentClass(User.class).withCodecRegistry(Codecs.REGISTRY);
+        this.bookRows = books.withDocumentClass(Book.class).withCodecRegistry(Codecs.REGISTRY);
+        this.userCache = UserCache.forNamespace(users.getNamespace().getFullName());
+        this.copies = CopySelector.of(db);
+        this.titles = TitleResolver.forCollection(books);
+        IndexManager.ensureIndexes(db);
+        titles.buildAsync(books);
     }
 
     // New helper required by seed code and controller
     public User findUserByUsername(String username) {
         if (username == null) return null;
-        Document d = users.find(eq("username", username)).first();
-        return docToUser(d);
+        return userCache.get(username, u -> userRows.find(eq("username", u)).first());
     }
 
     public User login(String username, String password) {
-        Document d = users.find(eq("username", username)).first();
-        if (d == null) return null;
-        String pw = d.getString("password");
+        User u = findUserByUsername(username);
+        if (u == null) return null;
+        String pw = u.getPassword();
         if (pw == null || !pw.equals(password)) return null;
-        return docToUser(d);
-    }
-
-    private User docToUser(Document d) {
-        if (d == null) return null;
-        String id = d.getString("id");
-        String username = d.getString("username");
-        String password = d.getString("password");
-        String role = d.getString("role");
-        if (role == null) role = "reader";
-        switch (role.toLowerCase()) {
-            case "admin": return new Admin(id == null ? "u-"+username : id, username, password);
-            case "librarian": return new Librarian(id == null ? "u-"+username : id, username, password);
-            case "student": return new Student(id == null ? "u-"+username : id, username, password, d.getString("studentNumber"));
-            default: return new Reader(id == null ? "u-"+username : id, username, password);
-        }
+        return u;
+    }
+
+    public UserCache.Stats userCacheStats() {
+        return userCache.stats();
+    }
+
+    public CopySelector.Stats copySelectionStats() {
+        return copies.stats();
+    }
+
+    public TitleResolver.Stats titleResolverStats() {
+        return titles.stats();
     }
 
     public void addUser(User user) {
@@ -69,7 +105,11 @@ public class LibraryManagementSystem {
                 .append("password", user.getPassword())
                 .append("role", user.getRole());
         if (user instanceof Student) d.append("studentNumber", ((Student) user).getStudentNumber());
-        users.insertOne(d);
+        try {
+            users.insertOne(d);
+        } finally {
+            userCache.invalidate(user.getUsername());
+        }
     }
 
     public void addStudent(String id, String username, String password, String studentNumber) {
@@ -79,92 +119,238 @@ public class LibraryManagementSystem {
 
     public boolean deleteUserByUsername(String username) {
         DeleteResult res = users.deleteOne(eq("username", username));
+        userCache.invalidate(username);
         return res.getDeletedCount() > 0;
     }
 
     public List<User> listAllUsers() {
-        List<User> out = new ArrayList<>();
-        for (Document d : users.find()) {
-            User u = docToUser(d);
-            if (u != null) out.add(u);
+        return userCache.all(() -> {
+            List<User> out = new ArrayList<>();
+            for (User u : userRows.find()) out.add(u);
+            return out;
+        });
+    }
+
+    public List<UserSummary> listUserSummaries() {
+        List<UserSummary> out = new ArrayList<>();
+        for (Document d : users.find().projection(USER_SUMMARY_FIELDS).sort(Sorts.ascending("username")).batchSize(1000)) {
+            String role = d.getString("role");
+            out.add(new UserSummary(d.getString("username"), role == null ? "reader" : role));
+        }
+        return out;
+    }
+
+    public List<BookSummary> listBookSummaries() {
+        List<BookSummary> out = new ArrayList<>();
+        for (Document d : books.find().projection(BOOK_SUMMARY_FIELDS).batchSize(1000)) {
+            String date = d.getString("createdDate");
+            out.add(new BookSummary(d.getString("isbn"), d.getString("name"), d.getString("status"),
+                    d.getString("category"), date != null ? date : d.getString("lastUpdated")));
         }
         return out;
     }
 
     public void addBook(Book b) {
         if (b == null) throw new IllegalArgumentException("book==null");
-        Document d = b.toDocument();
-        String now = Instant.now().toString();
+        Document d = catalogDocument(b.toDocument(), Instant.now().toString());
+        books.insertOne(d);
+        titles.put(d); // insertOne filled in _id
+    }
+
+    // defaults every catalogue entry gets, whether added one at a time or bulk imported
+    static Document catalogDocument(Document d, String now) {
         d.putIfAbsent("createdDate", now);
         d.put("lastUpdated", now);
         if (!d.containsKey("status") || d.getString("status") == null) d.put("status", "Available");
+        // printed books arrive with copiesAvailable and become inventory entries; a borrower
+        // given with them becomes their first loan
+        InventoryMigration.normalize(d, now);
         d.remove("price");
-        books.insertOne(d);
+        return d;
     }
 
+    /**
+     * Updates the descriptive fields of the first entry with this ISBN. Status and borrower
+     * are only written on one-document-per-copy entries; an inventory entry's loans change
+     * through borrowBook/returnBook alone.
+     */
     public boolean updateBookByIsbn(String isbn, Book updated) {
-        Document doc = books.find(eq("isbn", isbn)).first();
+        Document doc = books.find(eq("isbn", isbn)).projection(Projections.include("copiesTotal")).first();
         if (doc == null) return false;
         String now = Instant.now().toString();
         Document u = updated.toDocument();
         u.put("lastUpdated", now);
         u.remove("price");
-        books.updateOne(eq("isbn", isbn),
-                combine(
-                        set("name", u.getString("name")),
-                        set("category", u.getString("category")),
-                        set("status", u.getString("status")),
-                        set("isbn", u.getString("isbn")),
-                        set("lastUpdated", u.getString("lastUpdated")),
-                        set("borrowedBy", u.getString("borrowedBy"))
-                ));
+        List<Bson> sets = new ArrayList<>(List.of(
+                set("name", u.getString("name")),
+                set("category", u.getString("category")),
+                set("isbn", u.getString("isbn")),
+                set("lastUpdated", u.getString("lastUpdated"))));
+        Bson target = eq("_id", doc.get("_id"));
+        if (!isInventory(doc)) {
+            sets.add(set("status", u.getString("status")));
+            sets.add(set("borrowedBy", u.getString("borrowedBy")));
+            target = and(target, exists("copiesTotal", false));
+        }
+        books.updateOne(target, combine(sets));
+        titles.put(new Document("_id", doc.get("_id")).append("name", u.getString("name")).append("isbn", u.getString("isbn")));
         return true;
     }
 
+    /** Inventory entries carry copiesTotal; everything else is one document per copy. */
+    public static boolean isInventory(Document d) {
+        return d != null && d.get("copiesTotal") instanceof Number;
+    }
+
+    /**
+     * Checks out one copy. Inventory entries (with copiesTotal) take a single guarded
+     * {@code $inc} that also records the loan in activeLoans; a reader holds at most one copy
+     * of a title. Entries without a count are one document per copy and flip status instead;
+     * which of those copies gets claimed is left to {@link CopySelector}.
+     */
     public boolean borrowBook(String title, String username) {
         if (title == null || title.trim().isEmpty()) return false;
-        Document doc = books.find(and(regex("name", "^" + java.util.regex.Pattern.quote(title) + "$", "i"), eq("status", "Available"))).first();
-        if (doc == null) {
-            doc = books.find(and(regex("name", title, "i"), eq("status", "Available"))).first();
-        }
-        if (doc == null) return false;
-        String now = Instant.now().toString();
-        books.updateOne(eq("_id", doc.get("_id")),
+        Instant at = Instant.now();
+        String now = at.toString();
+        // the guards make each claim atomic: a concurrent borrower simply gets null back
+        Document doc = checkout(title, true,
+                and(exists("copiesTotal"), gt("copiesAvailable", 0), ne("activeLoans.username", username)),
+                combine(inc("copiesAvailable", -1), push("activeLoans", new Document("username", username).append("since", now)),
+                        set("lastUpdated", now)),
+                eq("status", "Available"),
                 combine(set("status", "Borrowed"), set("borrowedBy", username), set("lastUpdated", now)));
-        Document tx = new Document("action", "borrow")
-                .append("title", doc.getString("name"))
-                .append("isbn", doc.getString("isbn"))
-                .append("username", username)
-                .append("timestamp", now);
-        transactions.insertOne(tx);
+        if (doc == null) return false;
+        logTransaction("borrow", doc, username, at);
+        String isbn = doc.getString("isbn");
+        borrowStats.recordBorrow(isbn != null ? isbn : doc.getString("name"), doc.getString("name"), username, at);
+        alsoBorrowed.recordBorrow(username, isbn, doc.getString("name"), at);
         return true;
     }
 
     public boolean returnBook(String title, String username) {
         if (title == null || title.trim().isEmpty()) return false;
-        Document doc = books.find(and(regex("name", "^" + java.util.regex.Pattern.quote(title) + "$", "i"), eq("status", "Borrowed"), eq("borrowedBy", username))).first();
-        if (doc == null) {
-            doc = books.find(and(regex("name", title, "i"), eq("status", "Borrowed"), eq("borrowedBy", username))).first();
-        }
-        if (doc == null) return false;
-        String now = Instant.now().toString();
-        books.updateOne(eq("_id", doc.get("_id")),
+        Instant at = Instant.now();
+        String now = at.toString();
+        Document doc = checkout(title, false,
+                and(exists("copiesTotal"), eq("activeLoans.username", username)),
+                combine(inc("copiesAvailable", 1), pull("activeLoans", new Document("username", username)), set("lastUpdated", now)),
+                and(eq("status", "Borrowed"), eq("borrowedBy", username)),
                 combine(set("status", "Available"), set("borrowedBy", null), set("lastUpdated", now)));
-        Document tx = new Document("action", "return")
-                .append("title", doc.getString("name"))
-                .append("isbn", doc.getString("isbn"))
-                .append("username", username)
-                .append("timestamp", now);
-        transactions.insertOne(tx);
+        if (doc == null) return false;
+        logTransaction("return", doc, username, at);
         return true;
     }
 
+    /** Titles the user currently has out, from inventory loans and single-copy entries alike. */
+    public List<String> loansOf(String username) {
+        List<String> out = new ArrayList<>();
+        Bson mine = or(eq("activeLoans.username", username), eq("borrowedBy", username));
+        for (Document d : books.find(mine).projection(Projections.include("name"))) out.add(d.getString("name"));
+        return out;
+    }
+
+    // The exact (case-insensitive) name comes first: the resolver only hears about writes this
+    // process makes, so a title added elsewhere must not be taken for a neighbour it does know.
+    // A claim that fails on a title that exists means no copy is free, and ends the search;
+    // otherwise the TitleResolver's nearest names are tried by name (its _ids may be stale),
+    // and the partial-title match comes last. A borrow only follows a misspelling when it
+    // points at one title; a return's guard already limits it to the reader's own loans.
+    private Document checkout(String title, boolean borrowing, Bson copyGuard, Bson copyUpdate, Bson legacyGuard, Bson legacyUpdate) {
+        Bson exact = eq("name", title);
+        Document doc = checkoutBy(exact, true, borrowing, copyGuard, copyUpdate, legacyGuard, legacyUpdate);
+        if (doc != null || titleExists(exact)) return doc;
+        List<TitleResolver.Match> nearest = titles.resolve(title, MAX_TITLE_CANDIDATES);
+        if (!nearest.isEmpty() && (!borrowing || oneTitle(nearest))) {
+            Set<String> names = new LinkedHashSet<>();
+            for (TitleResolver.Match m : nearest) names.add(m.name());
+            Bson byName = names.size() == 1 ? eq("name", names.iterator().next()) : in("name", names);
+            doc = checkoutBy(byName, true, borrowing, copyGuard, copyUpdate, legacyGuard, legacyUpdate);
+            if (doc != null || titleExists(byName)) return doc;
+        }
+        return checkoutBy(looseTitle(title), false, borrowing, copyGuard, copyUpdate, legacyGuard, legacyUpdate);
+    }
+
+    // only asked after a claim failed, to tell "no free copy" from "no such title"
+    private boolean titleExists(Bson byName) {
+        return books.find(byName).collation(IndexManager.CASE_INSENSITIVE).projection(Projections.include("_id")).first() != null;
+    }
+
+    // tries the inventory shape before the legacy one-document-per-copy shape; borrows spread
+    // over the legacy copies
+    private Document checkoutBy(Bson byTitle, boolean caseInsensitive, boolean spread,
+                                Bson copyGuard, Bson copyUpdate, Bson legacyGuard, Bson legacyUpdate) {
+        Document doc = claim(and(byTitle, copyGuard), copyUpdate, caseInsensitive);
+        if (doc != null) return doc;
+        Bson legacy = and(byTitle, exists("copiesTotal", false), legacyGuard);
+        return spread
+                ? copies.claim(books, legacy, legacyGuard, legacyUpdate, caseInsensitive ? IndexManager.CASE_INSENSITIVE : null)
+                : claim(legacy, legacyUpdate, caseInsensitive);
+    }
+
+    private static boolean oneTitle(List<TitleResolver.Match> matches) {
+        String first = TitleResolver.normalize(matches.get(0).name());
+        for (TitleResolver.Match m : matches) if (!TitleResolver.normalize(m.name()).equals(first)) return false;
+        return true;
+    }
+
+    // partial-title match on the name alone. Not the CatalogSearchIndex: it also matches code,
+    // category and isbn ("Fiction" would claim any book in that category), and a top-n id list
+    // would hide later matches. A scan, but only reached once the exact name and the resolver
+    // have both come up empty.
+    private Bson looseTitle(String title) {
+        return regex("name", title, "i");
+    }
+
+    // single findOneAndUpdate round trip; returns the updated document or null if nothing matched
+    private Document claim(Bson filter, Bson update, boolean caseInsensitive) {
+        FindOneAndUpdateOptions opts = new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER);
+        if (caseInsensitive) opts.collation(IndexManager.CASE_INSENSITIVE);
+        return books.findOneAndUpdate(filter, update, opts);
+    }
+
+    private void logTransaction(String action, Document book, String username, Instant at) {
+        Document tx = history.entry(action, book.getString("name"), book.getString("isbn"), username, at);
+        TransactionLog.of(transactions).append(tx);
+    }
+
+    /** The user's borrows and returns in [from, to), oldest first; null leaves that end open. */
+    public List<TransactionHistory.Entry> historyOfUser(String username, Instant from, Instant to) {
+        return history.forUser(username, from, to);
+    }
+
+    /** Borrows and returns of the title with this ISBN in [from, to), oldest first. */
+    public List<TransactionHistory.Entry> historyOfTitle(String isbn, Instant from, Instant to) {
+        return history.forTitle(isbn, from, to);
+    }
+
+    public List<BorrowStats.Ranked> mostBorrowedTitles(int n) {
+        return borrowStats.topTitles(n);
+    }
+
+    public List<BorrowStats.Ranked> mostActiveReaders(int n) {
+        return borrowStats.topReaders(n);
+    }
+
+    /**
+     * Titles most often borrowed by readers who also borrowed this ISBN; empty while the
+     * co-borrow matrix is still loading.
+     */
+    public List<AlsoBorrowed.Recommendation> alsoBorrowed(String isbn, int k) {
+        return alsoBorrowed.recommend(isbn, k);
+    }
+
+    /** Leaderboard over UTC days [from, to), from the per-day counters. */
+    public List<BorrowStats.Ranked> mostBorrowed(BorrowStats.Kind kind, int n, LocalDate from, LocalDate to) {
+        return borrowStats.top(kind, n, from, to);
+    }
+
+    // unmaterialized queries for the streaming listings in AsyncLibraryManagementSystem
+    MongoIterable<User> userQuery() { return userRows.find(); }
+    MongoIterable<Book> bookQuery() { return bookRows.find(); }
+
     public List<Book> listAllBooks() {
         List<Book> out = new ArrayList<>();
-        for (Document d : books.find()) {
-            Book b = Book.fromDocument(d);
-            if (b != null) out.add(b);
-        }
+        for (Book b : bookRows.find()) out.add(b);
         return out;
     }
 }
\ No newline at end of file
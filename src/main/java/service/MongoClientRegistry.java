@@ -0,0 +1,160 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+/**
+ * Process-wide registry of long-lived MongoClients, keyed by URI + database.
+ *
+ * MongoDBConnection instances lease an entry instead of creating their own client,
+ * so a UI click no longer pays for a TCP handshake and pool warm-up. Leases are
+ * reference counted; a client whose count drops to zero stays open (idle) for the
+ * next caller and is only closed by {@link #shutdown()}.
+ */
+public final class MongoClientRegistry {
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private MongoClientRegistry() {}
+
+    /** Lease a database handle; the caller must pass it back to {@link #release(Lease)}. */
+    public static Lease acquire(String uri, String dbName) {
+        String key = uri + "|" + dbName;
+        Entry e = ENTRIES.compute(key, (k, cur) -> {
+            Entry en = (cur == null) ? new Entry(uri, dbName) : cur;
+            en.refs.incrementAndGet();
+            en.stats.leases.incrementAndGet();
+            return en;
+        });
+        return new Lease(key, e.database);
+    }
+
+    /**
+     * Key for per-database state such as {@link TransactionHistory#of}: the cluster (its hosts)
+     * plus the database name, so two clusters with a database of the same name never share
+     * it. A database not leased from here (an in-memory stand-in) is keyed by its name.
+     */
+    public static String keyOf(MongoDatabase db) {
+        String cluster = clusterOf(db);
+        return cluster == null ? db.getName() : cluster + "|" + db.getName();
+    }
+
+    /** {@link #keyOf} as one file name, for per-database files such as archive segments. */
+    public static String fileKeyOf(MongoDatabase db) {
+        return keyOf(db).replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    /** The hosts of the cluster db was leased from, e.g. "db1:27017,db2:27017"; null if not leased here. */
+    public static String clusterOf(MongoDatabase db) {
+        for (Entry e : ENTRIES.values()) if (e.database == db) return e.cluster;
+        return null;
+    }
+
+    public static void release(Lease lease) {
+        if (lease == null || lease.released) return;
+        lease.released = true;
+        Entry e = ENTRIES.get(lease.key);
+        if (e != null) e.refs.decrementAndGet();
+    }
+
+    /** Close every client; called from the App shutdown hook. */
+    public static synchronized void shutdown() {
+        for (Entry e : ENTRIES.values()) {
+            try { e.client.close(); } catch (Exception ignored) {}
+        }
+        ENTRIES.clear();
+    }
+
+    public static List<PoolStats> stats() {
+        List<PoolStats> out = new ArrayList<>();
+        for (Entry e : ENTRIES.values()) out.add(e.stats.snapshot(e.refs.get()));
+        return out;
+    }
+
+    /** A leased database; only the registry can create one. */
+    public static final class Lease {
+        private final String key;
+        private final MongoDatabase database;
+        private volatile boolean released;
+
+        private Lease(String key, MongoDatabase database) {
+            this.key = key;
+            this.database = database;
+        }
+
+        public MongoDatabase getDatabase() { return database; }
+    }
+
+    /** Immutable view of one pool's counters. */
+    public record PoolStats(String key, int activeLeases, long totalLeases,
+                            long connectionsCreated, long connectionsClosed,
+                            long checkOuts, long checkOutFailures, long checkedOutNow) {
+        @Override
+        public String toString() {
+            return String.format("%s leases=%d/%d conns created=%d closed=%d checkouts=%d failed=%d inUse=%d",
+                    key, activeLeases, totalLeases, connectionsCreated, connectionsClosed,
+                    checkOuts, checkOutFailures, checkedOutNow);
+        }
+    }
+
+    private static final class Entry {
+        final MongoClient client;
+        final MongoDatabase database;
+        final String cluster;
+        final AtomicLong refs = new AtomicLong();
+        final Counters stats;
+
+        Entry(String uri, String dbName) {
+            this.stats = new Counters(uri + "/" + dbName);
+            ConnectionString cs = new ConnectionString(uri);
+            this.cluster = String.join(",", cs.getHosts().stream().sorted().toList());
+            MongoClientSettings settings = MongoClientSettings.builder()
+                    .applyConnectionString(cs)
+                    .applyToConnectionPoolSettings(b -> b.addConnectionPoolListener(stats)
+                            .addConnectionPoolListener(DriverMetrics.get()))
+                    .addCommandListener(DriverMetrics.get())
+                    .build();
+            this.client = MongoClients.create(settings);
+            this.database = client.getDatabase(dbName);
+        }
+    }
+
+    private static final class Counters implements ConnectionPoolListener {
+        final String key;
+        final AtomicLong leases = new AtomicLong();
+        final AtomicLong created = new AtomicLong();
+        final AtomicLong closed = new AtomicLong();
+        final AtomicLong checkOuts = new AtomicLong();
+        final AtomicLong checkIns = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+
+        Counters(String key) { this.key = key; }
+
+        @Override public void connectionCreated(ConnectionCreatedEvent event) { created.incrementAndGet(); }
+        @Override public void connectionClosed(ConnectionClosedEvent event) { closed.incrementAndGet(); }
+        @Override public void connectionCheckedOut(ConnectionCheckedOutEvent event) { checkOuts.incrementAndGet(); }
+        @Override public void connectionCheckedIn(ConnectionCheckedInEvent event) { checkIns.incrementAndGet(); }
+        @Override public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) { failures.incrementAndGet(); }
+
+        PoolStats snapshot(long activeLeases) {
+            long out = checkOuts.get();
+            return new PoolStats(key, (int) activeLeases, leases.get(), created.get(), closed.get(),
+                    out, failures.get(), out - checkIns.get());
+        }
+    }
+}
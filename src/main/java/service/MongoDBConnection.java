@@ -1,25 +1,23 @@
 package service;
 
-import com.mongodb.client.MongoClient;
-import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoDatabase;
 
 public class MongoDBConnection {
-    private final MongoClient client;
+    private final MongoClientRegistry.Lease lease;
     private final MongoDatabase database;
 
     public MongoDBConnection() {
         // connect to localhost:27017 and use database "LibraryDB"
-        this.client = MongoClients.create("mongodb://localhost:27017");
-        this.database = client.getDatabase("LibraryDB");
+        this("mongodb://localhost:27017", "LibraryDB");
     }
 
     // convenience ctor that still allows overriding if needed
     public MongoDBConnection(String connectionString, String dbName) {
         String conn = (connectionString == null || connectionString.isEmpty()) ? "mongodb://localhost:27017" : connectionString;
         String db = (dbName == null || dbName.isEmpty()) ? "LibraryDB" : dbName;
-        this.client = MongoClients.create(conn);
-        this.database = client.getDatabase(db);
+        // shared client from the registry; close() only releases the lease
+        this.lease = MongoClientRegistry.acquire(conn, db);
+        this.database = lease.getDatabase();
     }
 
     public MongoDatabase getDatabase() {
@@ -27,6 +25,6 @@ public class MongoDBConnection {
     }
 
     public void close() {
-        client.close();
+        MongoClientRegistry.release(lease);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,359 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+
+/**
+ * Typo-tolerant lookup from a typed title to catalogue documents.
+ *
+ * Names are normalized the way {@link CatalogSearchIndex} tokenizes them (accents stripped,
+ * lower case, punctuation collapsed to single spaces), and each distinct normalized name
+ * gets an int ordinal holding the _id and isbn of every document that carries it, so
+ * per-copy documents share one entry. Every name is split into padded trigrams with a sorted
+ * postings list of ordinals per trigram.
+ *
+ * A query that matches a name exactly resolves with one hash lookup. Otherwise the postings
+ * of the query's trigrams are counted per ordinal; a name within d edits shares at least
+ * (query trigrams - 3d) of them, so only names reaching that count and within d characters
+ * of the query's length get a banded Levenshtein check. d is 0 for queries of up to 3
+ * characters, 1 up to 7 and 2 beyond. Only the nearest distance is returned.
+ *
+ * One resolver exists per collection (see {@link #forCollection}); it is loaded in the
+ * background by {@link #buildAsync} and kept current through {@link #put} / {@link #remove}.
+ * A document put or removed while the load is running keeps that state: the load skips it.
+ * A name whose last document goes away leaves its ordinal dead; once dead ordinals outnumber
+ * live ones the survivors are renumbered in order, as in {@link CatalogSearchIndex}.
+ */
+public final class TitleResolver {
+
+    /** A document whose name is distance edits away from the query. */
+    public record Match(Object id, String isbn, String name, int distance) {}
+
+    public record Stats(boolean ready, int documents, int names, long lookups, long fuzzy, long misses) {}
+
+    private static final Map<String, TitleResolver> RESOLVERS = new ConcurrentHashMap<>();
+    private static final Postings NO_POSTINGS = new Postings();
+    private static final int COMPACT_MIN_DEAD = 4096;
+    // per-thread counters, handed back zeroed so a lookup does not allocate one per name
+    private static final ThreadLocal<int[][]> SCRATCH = ThreadLocal.withInitial(() -> new int[][]{new int[0], new int[64]});
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> keyOf = new ArrayList<>();
+    private final List<String> nameOf = new ArrayList<>();
+    // _id -> isbn of every document carrying the name; null once the name is gone
+    private final List<Map<Object, String>> docsOf = new ArrayList<>();
+    private final Map<Object, Integer> ordinalOfDoc = new HashMap<>();
+    private final Map<String, Postings> trigrams = new HashMap<>();
+    // ids put or removed since the running load started; null when no load is running
+    private Set<Object> touchedWhileLoading;
+    private int dead;
+    private final AtomicBoolean building = new AtomicBoolean();
+    private volatile boolean ready;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong fuzzy = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Shared resolver for a collection; empty until it has been built. */
+    public static TitleResolver forCollection(MongoCollection<Document> collection) {
+        return RESOLVERS.computeIfAbsent(collection.getNamespace().getFullName(), k -> new TitleResolver());
+    }
+
+    public static Map<String, Stats> statsAll() {
+        Map<String, Stats> out = new ConcurrentHashMap<>();
+        RESOLVERS.forEach((k, v) -> out.put(k, v.stats()));
+        return out;
+    }
+
+    public boolean isReady() { return ready; }
+
+    /** Loads every name on a background thread unless a load already ran or is running. */
+    public void buildAsync(MongoCollection<Document> collection) {
+        if (ready || !building.compareAndSet(false, true)) return;
+        Thread.ofVirtual().name("title-resolver-" + collection.getNamespace().getFullName()).start(() -> {
+            try {
+                build(collection);
+            } catch (RuntimeException e) {
+                building.set(false); // the next LibraryManagementSystem tries again
+                System.err.println("[titles] could not load " + collection.getNamespace().getFullName() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    public void build(MongoCollection<Document> collection) {
+        lock.writeLock().lock();
+        try {
+            touchedWhileLoading = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            for (Document d : collection.find().projection(Projections.include("name", "isbn")).batchSize(5000)) {
+                Object id = d.get("_id");
+                if (id == null) continue;
+                lock.writeLock().lock();
+                try {
+                    // a live put or remove has already seen a newer version than the cursor did
+                    if (!touchedWhileLoading.contains(id)) index(id, d.getString("name"), d.getString("isbn"));
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+        } finally {
+            lock.writeLock().lock();
+            try {
+                touchedWhileLoading = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        ready = true;
+    }
+
+    public Stats stats() {
+        lock.readLock().lock();
+        try {
+            return new Stats(ready, ordinalOfDoc.size(), nameIds.size(), lookups.get(), fuzzy.get(), misses.get());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Add or replace a document (only _id, name and isbn are read). */
+    public void put(Document d) {
+        Object id = d.get("_id");
+        if (id == null) return;
+        lock.writeLock().lock();
+        try {
+            if (touchedWhileLoading != null) touchedWhileLoading.add(id);
+            index(id, d.getString("name"), d.getString("isbn"));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Object id) {
+        lock.writeLock().lock();
+        try {
+            if (touchedWhileLoading != null) touchedWhileLoading.add(id);
+            detach(id);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the write lock
+    private void index(Object id, String name, String isbn) {
+        detach(id);
+        compactIfSparse();
+        String key = normalize(name);
+        if (key.isEmpty()) return;
+        Integer ord = nameIds.get(key);
+        if (ord == null) {
+            ord = keyOf.size();
+            nameIds.put(key, ord);
+            keyOf.add(key);
+            nameOf.add(name);
+            docsOf.add(new LinkedHashMap<>());
+            for (String g : grams(key)) trigrams.computeIfAbsent(g, x -> new Postings()).add(ord);
+        }
+        docsOf.get(ord).put(id, isbn);
+        ordinalOfDoc.put(id, ord);
+    }
+
+    /**
+     * Documents whose name is nearest to title, up to limit of them, in insertion order;
+     * all share the same distance. Empty while loading or when nothing is close enough.
+     */
+    public List<Match> resolve(String title, int limit) {
+        String q = normalize(title);
+        if (!ready || q.isEmpty() || limit <= 0) return List.of();
+        lookups.incrementAndGet();
+        lock.readLock().lock();
+        try {
+            Integer exact = nameIds.get(q);
+            if (exact != null) return matches(new int[]{exact}, 1, 0, limit);
+            int maxEdits = q.length() <= 3 ? 0 : q.length() <= 7 ? 1 : 2;
+            if (maxEdits == 0) { misses.incrementAndGet(); return List.of(); }
+            Set<String> grams = grams(q);
+            int need = grams.size() - 3 * maxEdits;
+            int[][] scratch = SCRATCH.get();
+            // regrown after a compaction too, so a thread does not keep a counter per long-dead name
+            if (scratch[0].length < keyOf.size() || scratch[0].length > 2 * keyOf.size() + 1024) {
+                scratch[0] = new int[keyOf.size() + keyOf.size() / 2];
+            }
+            int[] counts = scratch[0];
+            int[] touched = scratch[1];
+            int touchedSize = 0;
+            Postings[] lists = new Postings[grams.size()];
+            int n = 0;
+            for (String g : grams) lists[n++] = trigrams.getOrDefault(g, NO_POSTINGS);
+            Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+            // a name that shares need grams shares at least one of any (n - need + 1) of them, so
+            // only the rarest that many bring in candidates; the common ones just add to counts
+            int seeding = need <= 0 ? n : n - need + 1;
+            for (int k = 0; k < n; k++) {
+                int[] ords = lists[k].ords;
+                int size = lists[k].size;
+                if (k < seeding) {
+                    for (int i = 0; i < size; i++) {
+                        if (counts[ords[i]]++ == 0) {
+                            if (touchedSize == touched.length) touched = Arrays.copyOf(touched, touchedSize * 2);
+                            touched[touchedSize++] = ords[i];
+                        }
+                    }
+                } else if ((long) touchedSize * 16 < size) {
+                    for (int i = 0; i < touchedSize; i++) if (Arrays.binarySearch(ords, 0, size, touched[i]) >= 0) counts[touched[i]]++;
+                } else {
+                    for (int i = 0; i < size; i++) if (counts[ords[i]] > 0) counts[ords[i]]++;
+                }
+            }
+            int best = maxEdits + 1;
+            int[] nearest = new int[8];
+            int nearestSize = 0;
+            for (int i = 0; i < touchedSize; i++) {
+                int ord = touched[i];
+                String key = keyOf.get(ord);
+                int bound = Math.min(best, maxEdits); // ties with the best so far still count
+                if (counts[ord] < need || Math.abs(key.length() - q.length()) > bound) continue;
+                int d = distance(q, key, bound);
+                if (d > bound) continue;
+                if (d < best) { best = d; nearestSize = 0; }
+                if (d == best) {
+                    if (nearestSize == nearest.length) nearest = Arrays.copyOf(nearest, nearestSize * 2);
+                    nearest[nearestSize++] = ord;
+                }
+            }
+            for (int i = 0; i < touchedSize; i++) counts[touched[i]] = 0;
+            scratch[1] = touched;
+            if (nearestSize == 0) { misses.incrementAndGet(); return List.of(); }
+            fuzzy.incrementAndGet();
+            Arrays.sort(nearest, 0, nearestSize);
+            return matches(nearest, nearestSize, best, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Match> matches(int[] ords, int n, int distance, int limit) {
+        List<Match> out = new ArrayList<>();
+        for (int i = 0; i < n && out.size() < limit; i++) {
+            for (Map.Entry<Object, String> e : docsOf.get(ords[i]).entrySet()) {
+                out.add(new Match(e.getKey(), e.getValue(), nameOf.get(ords[i]), distance));
+                if (out.size() == limit) break;
+            }
+        }
+        return out;
+    }
+
+    // drops id from its name; a name with no documents left leaves the trigram postings
+    private void detach(Object id) {
+        Integer ord = ordinalOfDoc.remove(id);
+        if (ord == null) return;
+        Map<Object, String> docs = docsOf.get(ord);
+        docs.remove(id);
+        if (!docs.isEmpty()) return;
+        String key = keyOf.get(ord);
+        nameIds.remove(key);
+        for (String g : grams(key)) {
+            Postings p = trigrams.get(g);
+            if (p != null && p.remove(ord) && p.size == 0) trigrams.remove(g);
+        }
+        docsOf.set(ord, null);
+        nameOf.set(ord, null);
+        keyOf.set(ord, null);
+        dead++;
+    }
+
+    // renumbers live ordinals 0..n-1 in their current order, so postings stay sorted in place
+    private void compactIfSparse() {
+        if (dead < COMPACT_MIN_DEAD || dead < nameIds.size()) return;
+        int[] remap = new int[keyOf.size()];
+        int next = 0;
+        for (int ord = 0; ord < keyOf.size(); ord++) {
+            if (docsOf.get(ord) == null) continue;
+            remap[ord] = next;
+            keyOf.set(next, keyOf.get(ord));
+            nameOf.set(next, nameOf.get(ord));
+            docsOf.set(next, docsOf.get(ord));
+            next++;
+        }
+        keyOf.subList(next, keyOf.size()).clear();
+        nameOf.subList(next, nameOf.size()).clear();
+        docsOf.subList(next, docsOf.size()).clear();
+        for (Postings p : trigrams.values()) for (int i = 0; i < p.size; i++) p.ords[i] = remap[p.ords[i]];
+        nameIds.replaceAll((key, ord) -> remap[ord]);
+        ordinalOfDoc.replaceAll((id, ord) -> remap[ord]);
+        dead = 0;
+    }
+
+    static String normalize(String title) {
+        return title == null ? "" : String.join(" ", CatalogSearchIndex.tokenize(title, false));
+    }
+
+    // two leading and one trailing pad, so prefixes weigh a little more than suffixes
+    private static Set<String> grams(String key) {
+        String padded = "  " + key + " ";
+        Set<String> out = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) out.add(padded.substring(i, i + 3));
+        return out;
+    }
+
+    /** Levenshtein distance of a and b, or max + 1 as soon as it is known to exceed max. */
+    static int distance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) return max + 1;
+        int[] prev = new int[b.length() + 1], cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) prev[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            int rowMin = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int sub = prev[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+                cur[j] = Math.min(sub, Math.min(prev[j], cur[j - 1]) + 1);
+                rowMin = Math.min(rowMin, cur[j]);
+            }
+            if (rowMin > max) return max + 1;
+            int[] t = prev; prev = cur; cur = t;
+        }
+        return Math.min(prev[b.length()], max + 1);
+    }
+
+    /** Sorted ordinals; new ordinals are the largest, so adds are appends. */
+    private static final class Postings {
+        int[] ords = new int[4];
+        int size;
+
+        void add(int ord) {
+            if (size == ords.length) ords = Arrays.copyOf(ords, size * 2);
+            ords[size++] = ord;
+        }
+
+        boolean remove(int ord) {
+            int i = Arrays.binarySearch(ords, 0, size, ord);
+            if (i < 0) return false;
+            System.arraycopy(ords, i + 1, ords, i, size - i - 1);
+            size--;
+            return true;
+        }
+    }
+}
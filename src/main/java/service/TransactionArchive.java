@@ -0,0 +1,531 @@
+package service;
+
+import static com.mongodb.client.model.Filters.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.conversions.Bson;
+import org.bson.io.BasicOutputBuffer;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Sorts;
+
+/**
+ * Cold storage for old transactions: local, compressed, append-only segment files.
+ *
+ * {@link #archive} moves entries older than a cutoff out of the transactions collection,
+ * oldest first, into new segment files of up to segmentEntries entries each. Segments are
+ * never rewritten. A segment is written to a temp file, forced to disk and moved into place
+ * before the _ids it holds are deleted from the hot collection, so a crash can leave entries
+ * in both places but never in neither, and an entry inserted into the range meanwhile stays
+ * in the collection. Queries read the hot side only from {@link #coveredUntil()} on, so they
+ * never return an entry twice. Whatever the next run finds below coveredUntil is either a
+ * leftover a segment already holds, which is deleted, or an entry that arrived late, which
+ * goes into a segment of its own first; until then such an entry is not visible to queries.
+ *
+ * A segment holds deflated blocks of BLOCK_ENTRIES entries, in timestamp order, and the
+ * deflated _ids of those entries. A sparse index sits in the footer: per block, its time
+ * range and two small Bloom filters, one over usernames and one over ISBNs. A lookup maps
+ * the file read-only, skips every block whose range or filter rules it out, and inflates
+ * only the rest. Files live under ~/.library-app/archive/&lt;key&gt; (or
+ * -Dlibrary.archive.dir/&lt;key&gt;), key being {@link MongoClientRegistry#fileKeyOf} (cluster
+ * hosts plus database), on the machine that runs the archiver, so only the application on
+ * that machine sees the cold part of the history.
+ */
+public final class TransactionArchive {
+
+    public static final int BLOCK_ENTRIES = 128;
+    public static final int DEFAULT_SEGMENT_ENTRIES = 200_000;
+
+    public record Result(long archived, int segments, long deleted, Instant coveredUntil) {
+        @Override
+        public String toString() {
+            return String.format("%d entries archived into %d segments, %d deleted from the collection; archive covers up to %s",
+                    archived, segments, deleted, coveredUntil);
+        }
+    }
+
+    public record Stats(int segments, long entries, long bytes, Instant coveredUntil) {}
+
+    private static final int MAGIC = 0x54585347; // "TXSG"
+    private static final int VERSION = 2;
+    private static final int DELETE_BATCH = 10_000;
+    private static final DocumentCodec ID_CODEC = new DocumentCodec();
+    private static final String SUFFIX = ".txs";
+    private static final int BLOOM_WORDS = 16; // 8 bits per entry and key kind, ~3% false positives
+    private static final long RESCAN_NANOS = 1_000_000_000L;
+    private static final Map<String, TransactionArchive> ARCHIVES = new ConcurrentHashMap<>();
+
+    private final Path directory;
+    // immutable snapshot, replaced when a rescan finds new files
+    private volatile List<Segment> segments = List.of();
+    private volatile long scannedAt;
+    private volatile boolean scanned;
+
+    public TransactionArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /** Archive of db's transactions in the default directory. */
+    public static TransactionArchive of(MongoDatabase db) {
+        return ARCHIVES.computeIfAbsent(MongoClientRegistry.keyOf(db), k -> new TransactionArchive(defaultDirectory(db)));
+    }
+
+    public static Path defaultDirectory(MongoDatabase db) {
+        String dir = System.getProperty("library.archive.dir");
+        Path root = dir != null ? Path.of(dir) : Path.of(System.getProperty("user.home"), ".library-app", "archive");
+        return root.resolve(MongoClientRegistry.fileKeyOf(db));
+    }
+
+    /** Everything before this instant is in segments; null when nothing has been archived. */
+    public Instant coveredUntil() {
+        List<Segment> all = segments();
+        if (all.isEmpty()) return null;
+        long until = Long.MIN_VALUE;
+        for (Segment s : all) until = Math.max(until, s.until);
+        return Instant.ofEpochMilli(until);
+    }
+
+    public Stats stats() {
+        List<Segment> all = segments();
+        long entries = 0, bytes = 0;
+        for (Segment s : all) { entries += s.entries; bytes += s.buffer.capacity(); }
+        return new Stats(all.size(), entries, bytes, coveredUntil());
+    }
+
+    public List<TransactionHistory.Entry> forUser(String username, Instant from, Instant to) {
+        return range(username, true, from, to);
+    }
+
+    public List<TransactionHistory.Entry> forTitle(String isbn, Instant from, Instant to) {
+        return range(isbn, false, from, to);
+    }
+
+    /**
+     * Every archived entry at or after from (null: all of them), segment by segment in order
+     * of their start; entries swept up late sit in their own segment, so they come out of order.
+     */
+    public void scan(Instant from, Consumer<TransactionHistory.Entry> sink) {
+        long lo = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        Inflater inflater = new Inflater();
+        try {
+            for (Segment s : segments()) {
+                if (s.until <= lo) continue;
+                for (Block b : s.blocks) if (b.maxTs >= lo) s.read(b, inflater, lo, Long.MAX_VALUE, -1, null, sink);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private List<TransactionHistory.Entry> range(String key, boolean user, Instant from, Instant to) {
+        long lo = from == null ? Long.MIN_VALUE : from.toEpochMilli();
+        long hi = to == null ? Long.MAX_VALUE : to.toEpochMilli();
+        int[] bits = bloomBits(key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        List<TransactionHistory.Entry> out = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try {
+            for (Segment s : segments()) {
+                if (s.until <= lo || s.from >= hi) continue;
+                for (Block b : s.blocks) {
+                    if (b.maxTs < lo || b.minTs >= hi || !mayContain(user ? b.users : b.isbns, bits)) continue;
+                    s.read(b, inflater, lo, hi, user ? USERNAME : ISBN, keyBytes, out::add);
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        // segments swept up late overlap older ones, so going by segment start is not enough
+        out.sort(Comparator.comparing(TransactionHistory.Entry::timestamp));
+        return out;
+    }
+
+    // --- archiving ------------------------------------------------------------------------
+
+    /**
+     * Moves every transaction with a timestamp before cutoff into new segments and deletes it
+     * from the collection. Entries whose timestamp is still a string are left alone; run
+     * {@link TransactionMigration} first.
+     */
+    public Result archive(MongoDatabase db, Instant cutoff, int segmentEntries, Consumer<String> progress) throws IOException {
+        TransactionHistory history = TransactionHistory.of(db);
+        MongoCollection<Document> tx = db.getCollection(TransactionHistory.COLLECTION);
+        Instant covered = coveredUntil();
+        Files.createDirectories(directory);
+        long[] totals = new long[3]; // archived, segments, deleted
+        if (covered != null) {
+            sweep(tx, history, covered, segmentEntries, totals, progress);
+            if (!cutoff.isAfter(covered)) return new Result(totals[0], (int) totals[1], totals[2], coveredUntil());
+        }
+        Bson filter = covered == null ? lt("timestamp", Date.from(cutoff))
+                : and(gte("timestamp", Date.from(covered)), lt("timestamp", Date.from(cutoff)));
+        List<TransactionHistory.Entry> pending = new ArrayList<>();
+        List<Object> ids = new ArrayList<>();
+        Long from = covered == null ? null : covered.toEpochMilli();
+        for (Document d : tx.find(filter).sort(Sorts.ascending("timestamp")).batchSize(5000)) {
+            TransactionHistory.Entry e = history.entryOf(d);
+            if (e.timestamp() == null) continue;
+            long at = e.timestamp().toEpochMilli();
+            if (from == null) from = at;
+            // a segment only ends between two distinct timestamps, so its range is exact
+            if (pending.size() >= segmentEntries && at > pending.get(pending.size() - 1).timestamp().toEpochMilli()) {
+                seal(tx, pending, ids, from, at, totals, progress);
+                from = at;
+            }
+            pending.add(e);
+            ids.add(d.get("_id"));
+        }
+        if (!pending.isEmpty()) seal(tx, pending, ids, from, cutoff.toEpochMilli(), totals, progress);
+        return new Result(totals[0], (int) totals[1], totals[2], coveredUntil());
+    }
+
+    /**
+     * Deals with everything the collection still has below covered: entries a segment already
+     * holds (a run stopped between writing the segment and deleting them) are deleted, the
+     * rest arrived after their range was archived and are sealed into segments of their own.
+     */
+    private void sweep(MongoCollection<Document> tx, TransactionHistory history, Instant covered, int segmentEntries,
+                       long[] totals, Consumer<String> progress) throws IOException {
+        List<Segment> all = segments();
+        Map<Segment, Set<Object>> members = new HashMap<>();
+        List<Object> stale = new ArrayList<>();
+        List<TransactionHistory.Entry> late = new ArrayList<>();
+        List<Object> lateIds = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try {
+            for (Document d : tx.find(lt("timestamp", Date.from(covered))).sort(Sorts.ascending("timestamp")).batchSize(5000)) {
+                TransactionHistory.Entry e = history.entryOf(d);
+                if (e.timestamp() == null) continue;
+                long at = e.timestamp().toEpochMilli();
+                Object id = d.get("_id");
+                boolean held = false;
+                for (Segment s : all) {
+                    if (at < s.from || at >= s.until) continue;
+                    if (members.computeIfAbsent(s, x -> x.ids(inflater)).contains(id)) { held = true; break; }
+                }
+                if (held) {
+                    stale.add(id);
+                    if (stale.size() == DELETE_BATCH) { totals[2] += deleteIds(tx, stale); stale.clear(); }
+                } else {
+                    late.add(e);
+                    lateIds.add(id);
+                    if (late.size() == segmentEntries) {
+                        sealLate(tx, late, lateIds, totals, progress);
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        totals[2] += deleteIds(tx, stale);
+        if (!late.isEmpty()) sealLate(tx, late, lateIds, totals, progress);
+    }
+
+    // late entries overlap ranges that are already archived, so their segment spans just them;
+    // sorted here as well, since block ranges assume timestamp order
+    private void sealLate(MongoCollection<Document> tx, List<TransactionHistory.Entry> late, List<Object> ids,
+                          long[] totals, Consumer<String> progress) throws IOException {
+        Integer[] order = new Integer[late.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing(i -> late.get(i).timestamp()));
+        List<TransactionHistory.Entry> entries = new ArrayList<>(order.length);
+        List<Object> sortedIds = new ArrayList<>(order.length);
+        for (int i : order) { entries.add(late.get(i)); sortedIds.add(ids.get(i)); }
+        late.clear();
+        ids.clear();
+        long from = entries.get(0).timestamp().toEpochMilli();
+        long until = entries.get(entries.size() - 1).timestamp().toEpochMilli() + 1;
+        seal(tx, entries, sortedIds, from, until, totals, progress);
+    }
+
+    // writes entries as segment [from, until), deletes exactly their _ids and clears both lists
+    private void seal(MongoCollection<Document> tx, List<TransactionHistory.Entry> entries, List<Object> ids,
+                      long from, long until, long[] totals, Consumer<String> progress) throws IOException {
+        Path file = directory.resolve(String.format("%013d-%013d%s", from, until, SUFFIX));
+        for (int n = 1; Files.exists(file); n++) file = directory.resolve(String.format("%013d-%013d-%d%s", from, until, n, SUFFIX));
+        write(file, entries, ids, from, until);
+        rescan();
+        totals[2] += deleteIds(tx, ids);
+        totals[0] += entries.size();
+        totals[1]++;
+        progress.accept("archived " + totals[0]);
+        entries.clear();
+        ids.clear();
+    }
+
+    private static long deleteIds(MongoCollection<Document> tx, List<Object> ids) {
+        long deleted = 0;
+        for (int start = 0; start < ids.size(); start += DELETE_BATCH) {
+            deleted += tx.deleteMany(in("_id", ids.subList(start, Math.min(ids.size(), start + DELETE_BATCH)))).getDeletedCount();
+        }
+        return deleted;
+    }
+
+    private static void write(Path file, List<TransactionHistory.Entry> entries, List<Object> ids, long from, long until) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        List<Block> blocks = new ArrayList<>();
+        Deflater deflater = new Deflater();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(24).putInt(MAGIC).putInt(VERSION).putLong(from).putLong(until).flip();
+            while (header.hasRemaining()) ch.write(header);
+            for (int start = 0; start < entries.size(); start += BLOCK_ENTRIES) {
+                List<TransactionHistory.Entry> chunk = entries.subList(start, Math.min(entries.size(), start + BLOCK_ENTRIES));
+                long[] users = new long[BLOOM_WORDS], isbns = new long[BLOOM_WORDS];
+                ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(raw);
+                for (TransactionHistory.Entry e : chunk) {
+                    out.writeLong(e.timestamp().toEpochMilli());
+                    writeString(out, e.username());
+                    writeString(out, e.isbn());
+                    writeString(out, e.action());
+                    writeString(out, e.title());
+                    if (e.username() != null) addToBloom(users, e.username());
+                    if (e.isbn() != null) addToBloom(isbns, e.isbn());
+                }
+                byte[] plain = raw.toByteArray();
+                byte[] packed = deflate(deflater, plain);
+                ByteBuffer data = ByteBuffer.wrap(packed);
+                long offset = ch.position();
+                while (data.hasRemaining()) ch.write(data);
+                blocks.add(new Block(chunk.get(0).timestamp().toEpochMilli(), chunk.get(chunk.size() - 1).timestamp().toEpochMilli(),
+                        offset, packed.length, plain.length, chunk.size(), users, isbns));
+            }
+            // the _ids, in entry order, as one BSON document {ids: [...]}
+            byte[] plainIds = encodeIds(ids);
+            byte[] packedIds = deflate(deflater, plainIds);
+            long idsOffset = ch.position();
+            ByteBuffer idData = ByteBuffer.wrap(packedIds);
+            while (idData.hasRemaining()) ch.write(idData);
+            long indexOffset = ch.position();
+            ByteBuffer index = ByteBuffer.allocate(4 + blocks.size() * (8 + 8 + 8 + 4 + 4 + 4 + 16 * BLOOM_WORDS) + 16 + 12);
+            index.putInt(blocks.size());
+            for (Block b : blocks) {
+                index.putLong(b.minTs).putLong(b.maxTs).putLong(b.offset).putInt(b.length).putInt(b.rawLength).putInt(b.count);
+                for (long w : b.users) index.putLong(w);
+                for (long w : b.isbns) index.putLong(w);
+            }
+            index.putLong(idsOffset).putInt(packedIds.length).putInt(plainIds.length);
+            index.putLong(indexOffset).putInt(MAGIC).flip();
+            while (index.hasRemaining()) ch.write(index);
+            ch.force(true);
+        } finally {
+            deflater.end();
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] plain) {
+        deflater.reset();
+        deflater.setInput(plain);
+        deflater.finish();
+        ByteArrayOutputStream packed = new ByteArrayOutputStream(plain.length / 4);
+        byte[] buf = new byte[8192];
+        while (!deflater.finished()) packed.write(buf, 0, deflater.deflate(buf));
+        return packed.toByteArray();
+    }
+
+    private static byte[] inflate(Inflater inflater, ByteBuffer packed, int rawLength, Path file) {
+        byte[] plain = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(packed);
+        try {
+            int n = 0;
+            while (n < plain.length && !inflater.finished()) n += inflater.inflate(plain, n, plain.length - n);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("corrupt data in " + file, e);
+        }
+        return plain;
+    }
+
+    private static byte[] encodeIds(List<Object> ids) {
+        BasicOutputBuffer out = new BasicOutputBuffer();
+        try (BsonBinaryWriter w = new BsonBinaryWriter(out)) {
+            ID_CODEC.encode(w, new Document("ids", ids), EncoderContext.builder().build());
+        }
+        return out.toByteArray();
+    }
+
+    // --- segment files --------------------------------------------------------------------
+
+    private List<Segment> segments() {
+        if (!scanned || System.nanoTime() - scannedAt > RESCAN_NANOS) rescan();
+        return segments;
+    }
+
+    private synchronized void rescan() {
+        scannedAt = System.nanoTime();
+        scanned = true;
+        if (!Files.isDirectory(directory)) return;
+        Map<Path, Segment> known = new HashMap<>();
+        for (Segment s : segments) known.put(s.file, s);
+        List<Segment> next = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path p : (Iterable<Path>) files.filter(f -> f.getFileName().toString().endsWith(SUFFIX))::iterator) {
+                Segment s = known.get(p);
+                if (s == null) {
+                    try {
+                        s = Segment.open(p);
+                    } catch (IOException | RuntimeException e) {
+                        System.err.println("[archive] skipping unreadable segment " + p + ": " + e.getMessage());
+                        continue;
+                    }
+                }
+                next.add(s);
+            }
+        } catch (IOException e) {
+            System.err.println("[archive] could not list " + directory + ": " + e.getMessage());
+            return;
+        }
+        next.sort(Comparator.comparingLong(s -> s.from));
+        segments = List.copyOf(next);
+    }
+
+    private record Block(long minTs, long maxTs, long offset, int length, int rawLength, int count, long[] users, long[] isbns) {}
+
+    /** One mapped segment file; the sparse index is decoded once, blocks on demand. */
+    private static final class Segment {
+        final Path file;
+        final MappedByteBuffer buffer;
+        final long from, until;
+        final Block[] blocks;
+        final long entries;
+        // where the deflated _ids sit
+        final long idsOffset;
+        final int idsLength, idsRawLength;
+
+        private Segment(Path file, MappedByteBuffer buffer, long from, long until, Block[] blocks,
+                        long idsOffset, int idsLength, int idsRawLength) {
+            this.file = file;
+            this.buffer = buffer;
+            this.from = from;
+            this.until = until;
+            this.blocks = blocks;
+            this.idsOffset = idsOffset;
+            this.idsLength = idsLength;
+            this.idsRawLength = idsRawLength;
+            long n = 0;
+            for (Block b : blocks) n += b.count;
+            this.entries = n;
+        }
+
+        static Segment open(Path file) throws IOException {
+            MappedByteBuffer buf;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            if (buf.capacity() < 36 || buf.getInt(0) != MAGIC || buf.getInt(buf.capacity() - 4) != MAGIC) {
+                throw new IOException("not a transaction segment");
+            }
+            if (buf.getInt(4) != VERSION) throw new IOException("unsupported segment version " + buf.getInt(4));
+            ByteBuffer index = buf.duplicate().position((int) buf.getLong(buf.capacity() - 12));
+            Block[] blocks = new Block[index.getInt()];
+            for (int i = 0; i < blocks.length; i++) {
+                long minTs = index.getLong(), maxTs = index.getLong(), offset = index.getLong();
+                int length = index.getInt(), rawLength = index.getInt(), count = index.getInt();
+                long[] users = new long[BLOOM_WORDS], isbns = new long[BLOOM_WORDS];
+                for (int w = 0; w < BLOOM_WORDS; w++) users[w] = index.getLong();
+                for (int w = 0; w < BLOOM_WORDS; w++) isbns[w] = index.getLong();
+                blocks[i] = new Block(minTs, maxTs, offset, length, rawLength, count, users, isbns);
+            }
+            long idsOffset = index.getLong();
+            int idsLength = index.getInt(), idsRawLength = index.getInt();
+            return new Segment(file, buf, buf.getLong(8), buf.getLong(16), blocks, idsOffset, idsLength, idsRawLength);
+        }
+
+        /** The _ids of the entries this segment holds, for a sweep of what is left below coveredUntil. */
+        Set<Object> ids(Inflater inflater) {
+            byte[] plain = inflate(inflater, buffer.slice((int) idsOffset, idsLength), idsRawLength, file);
+            return new HashSet<>(new RawBsonDocument(plain).decode(ID_CODEC).getList("ids", Object.class));
+        }
+
+        /**
+         * Inflates block b and hands over its entries in [lo, hi) whose field keyField (USERNAME
+         * or ISBN, -1 for none) equals key; the key is compared as bytes, so entries that do
+         * not match are never turned into objects.
+         */
+        void read(Block b, Inflater inflater, long lo, long hi, int keyField, byte[] key, Consumer<TransactionHistory.Entry> sink) {
+            byte[] plain = inflate(inflater, buffer.slice((int) b.offset, b.length), b.rawLength, file);
+            ByteBuffer in = ByteBuffer.wrap(plain);
+            int[] starts = new int[FIELDS], lengths = new int[FIELDS];
+            for (int i = 0; i < b.count; i++) {
+                long at = in.getLong();
+                for (int f = 0; f < FIELDS; f++) {
+                    int len = in.getInt();
+                    starts[f] = in.position();
+                    lengths[f] = len;
+                    if (len > 0) in.position(in.position() + len);
+                }
+                if (at < lo || at >= hi) continue;
+                if (keyField >= 0 && (lengths[keyField] != key.length
+                        || !Arrays.equals(plain, starts[keyField], starts[keyField] + key.length, key, 0, key.length))) continue;
+                sink.accept(new TransactionHistory.Entry(string(plain, starts[ACTION], lengths[ACTION]),
+                        string(plain, starts[TITLE], lengths[TITLE]), string(plain, starts[ISBN], lengths[ISBN]),
+                        string(plain, starts[USERNAME], lengths[USERNAME]), Instant.ofEpochMilli(at)));
+            }
+        }
+    }
+
+    // entry layout inside a block: timestamp, then these fields as (byte length or -1 for null, UTF-8)
+    private static final int USERNAME = 0, ISBN = 1, ACTION = 2, TITLE = 3, FIELDS = 4;
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) { out.writeInt(-1); return; }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String string(byte[] buf, int start, int length) {
+        return length < 0 ? null : new String(buf, start, length, StandardCharsets.UTF_8);
+    }
+
+    // three probes from two halves of a mixed hash
+    private static int[] bloomBits(String key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        int h1 = (int) h, h2 = (int) (h >>> 32) | 1;
+        int bits = BLOOM_WORDS * 64;
+        return new int[]{Math.floorMod(h1, bits), Math.floorMod(h1 + h2, bits), Math.floorMod(h1 + 2 * h2, bits)};
+    }
+
+    private static void addToBloom(long[] words, String key) {
+        for (int bit : bloomBits(key)) words[bit >>> 6] |= 1L << bit;
+    }
+
+    private static boolean mayContain(long[] words, int[] bits) {
+        for (int bit : bits) if ((words[bit >>> 6] & (1L << bit)) == 0) return false;
+        return true;
+    }
+}
@@ -0,0 +1,205 @@
+package service;
+
+import static com.mongodb.client.model.Filters.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.TimeSeriesGranularity;
+import com.mongodb.client.model.TimeSeriesOptions;
+
+/**
+ * Layout of, and range queries over, the transactions audit log.
+ *
+ * Every entry carries timestamp as a BSON date. In the PLAIN layout username and isbn are
+ * top-level fields. In the TIME_SERIES layout the collection is a MongoDB time-series
+ * collection with timestamp as its time field and meta = {username, isbn} as its meta field,
+ * so the server buckets entries per reader and title and compresses them. A database gets
+ * the time-series layout when -Dlibrary.transactions.timeseries=true is set before its
+ * transactions collection exists; an existing plain collection is converted by
+ * {@link TransactionMigration}. -Dlibrary.transactions.retentionDays=N bounds storage in
+ * either layout (expireAfterSeconds, or a TTL index on timestamp).
+ *
+ * forUser/forTitle return [from, to) ranges oldest first; both are answered by a
+ * {field, timestamp} index declared in {@link #indexSpecs()}. Entries moved out by
+ * {@link TransactionArchive} are read from its segments for the part of the range before
+ * {@link TransactionArchive#coveredUntil()}, and the collection for the rest.
+ */
+public final class TransactionHistory {
+
+    public enum Layout { PLAIN, TIME_SERIES }
+
+    public static final String COLLECTION = "transactions";
+
+    public record Entry(String action, String title, String isbn, String username, Instant timestamp) {}
+
+    private static final Map<String, TransactionHistory> HISTORIES = new ConcurrentHashMap<>();
+
+    private final MongoCollection<Document> collection;
+    private final Layout layout;
+    private final TransactionArchive archive;
+
+    private TransactionHistory(MongoCollection<Document> collection, Layout layout, TransactionArchive archive) {
+        this.collection = collection;
+        this.layout = layout;
+        this.archive = archive;
+    }
+
+    /** History for db's transactions collection; creates it as time-series when configured. */
+    public static TransactionHistory of(MongoDatabase db) {
+        return HISTORIES.computeIfAbsent(MongoClientRegistry.keyOf(db), k -> new TransactionHistory(db.getCollection(COLLECTION), bootstrap(db),
+                TransactionArchive.of(db)));
+    }
+
+    /** Drops the cached layout, e.g. after {@link TransactionMigration} converted the collection. */
+    static void forget(MongoDatabase db) {
+        HISTORIES.remove(MongoClientRegistry.keyOf(db));
+    }
+
+    private static Layout bootstrap(MongoDatabase db) {
+        Layout existing = detect(db);
+        if (existing != null) return existing;
+        if (!Boolean.getBoolean("library.transactions.timeseries")) return Layout.PLAIN;
+        try {
+            db.createCollection(COLLECTION, timeSeriesOptions());
+            return Layout.TIME_SERIES;
+        } catch (Exception e) {
+            // another process may have created it first; whatever exists now wins
+            Layout now = detect(db);
+            if (now != null) return now;
+            System.err.println("[history] could not create time-series " + db.getName() + "." + COLLECTION + ": " + e.getMessage());
+            return Layout.PLAIN;
+        }
+    }
+
+    // null when the collection does not exist yet
+    static Layout detect(MongoDatabase db) {
+        Document info = db.listCollections().filter(eq("name", COLLECTION)).first();
+        if (info == null) return null;
+        Document options = info.get("options", Document.class);
+        return options != null && options.containsKey("timeseries") ? Layout.TIME_SERIES : Layout.PLAIN;
+    }
+
+    static CreateCollectionOptions timeSeriesOptions() {
+        CreateCollectionOptions opts = new CreateCollectionOptions().timeSeriesOptions(
+                new TimeSeriesOptions("timestamp").metaField("meta").granularity(TimeSeriesGranularity.SECONDS));
+        Long retention = retentionSeconds();
+        if (retention != null) opts.expireAfter(retention, TimeUnit.SECONDS);
+        return opts;
+    }
+
+    private static Long retentionSeconds() {
+        Integer days = Integer.getInteger("library.transactions.retentionDays");
+        return days == null || days <= 0 ? null : TimeUnit.DAYS.toSeconds(days);
+    }
+
+    public Layout layout() { return layout; }
+
+    public String usernameField() { return layout == Layout.TIME_SERIES ? "meta.username" : "username"; }
+
+    public String isbnField() { return layout == Layout.TIME_SERIES ? "meta.isbn" : "isbn"; }
+
+    /** The document to store for one borrow or return. */
+    public Document entry(String action, String title, String isbn, String username, Instant at) {
+        Document d = new Document("action", action).append("title", title);
+        if (layout == Layout.TIME_SERIES) {
+            d.append("meta", new Document("username", username).append("isbn", isbn));
+        } else {
+            d.append("isbn", isbn).append("username", username);
+        }
+        return d.append("timestamp", Date.from(at));
+    }
+
+    /** Indexes the range queries rely on, in this collection's layout. */
+    public List<IndexManager.IndexSpec> indexSpecs() {
+        List<IndexManager.IndexSpec> specs = new ArrayList<>();
+        String prefix = layout == Layout.TIME_SERIES ? "meta_" : "";
+        specs.add(new IndexManager.IndexSpec(COLLECTION, prefix + "username_timestamp",
+                Indexes.ascending(usernameField(), "timestamp"), new IndexOptions().name(prefix + "username_timestamp")));
+        specs.add(new IndexManager.IndexSpec(COLLECTION, prefix + "isbn_timestamp",
+                Indexes.ascending(isbnField(), "timestamp"), new IndexOptions().name(prefix + "isbn_timestamp")));
+        Long retention = retentionSeconds();
+        if (layout == Layout.PLAIN) {
+            // log-order scans (AlsoBorrowed catch-up); with a retention the same index also expires
+            // entries, while time-series collections expire through expireAfterSeconds instead
+            IndexOptions opts = new IndexOptions().name(retention != null ? "timestamp_ttl" : "timestamp");
+            if (retention != null) opts.expireAfter(retention, TimeUnit.SECONDS);
+            specs.add(new IndexManager.IndexSpec(COLLECTION, opts.getName(), Indexes.ascending("timestamp"), opts));
+        }
+        return specs;
+    }
+
+    public List<Entry> forUser(String username, Instant from, Instant to) {
+        Instant covered = archive.coveredUntil();
+        List<Entry> out = new ArrayList<>();
+        if (reachesCold(from, covered)) out.addAll(archive.forUser(username, from, coldEnd(to, covered)));
+        if (reachesHot(to, covered)) out.addAll(range(eq(usernameField(), username), hotStart(from, covered), to));
+        return out;
+    }
+
+    public List<Entry> forTitle(String isbn, Instant from, Instant to) {
+        Instant covered = archive.coveredUntil();
+        List<Entry> out = new ArrayList<>();
+        if (reachesCold(from, covered)) out.addAll(archive.forTitle(isbn, from, coldEnd(to, covered)));
+        if (reachesHot(to, covered)) out.addAll(range(eq(isbnField(), isbn), hotStart(from, covered), to));
+        return out;
+    }
+
+    private static boolean reachesCold(Instant from, Instant covered) {
+        return covered != null && (from == null || from.isBefore(covered));
+    }
+
+    private static boolean reachesHot(Instant to, Instant covered) {
+        return covered == null || to == null || to.isAfter(covered);
+    }
+
+    private static Instant coldEnd(Instant to, Instant covered) {
+        return to == null || to.isAfter(covered) ? covered : to;
+    }
+
+    // never below coveredUntil: leftovers of an interrupted archive run, and late entries the
+    // next run will archive, may still sit there
+    private static Instant hotStart(Instant from, Instant covered) {
+        return covered != null && (from == null || from.isBefore(covered)) ? covered : from;
+    }
+
+    private List<Entry> range(Bson key, Instant from, Instant to) {
+        List<Bson> filter = new ArrayList<>(List.of(key));
+        if (from != null) filter.add(gte("timestamp", Date.from(from)));
+        if (to != null) filter.add(lt("timestamp", Date.from(to)));
+        List<Entry> out = new ArrayList<>();
+        for (Document d : collection.find(and(filter)).sort(Sorts.ascending("timestamp")).batchSize(1000)) out.add(entryOf(d));
+        return out;
+    }
+
+    /** A stored entry in either layout; timestamp is null when it cannot be read. */
+    public Entry entryOf(Document d) {
+        Document meta = layout == Layout.TIME_SERIES ? d.get("meta", Document.class) : d;
+        if (meta == null) meta = new Document();
+        return new Entry(d.getString("action"), d.getString("title"), meta.getString("isbn"),
+                meta.getString("username"), instantOf(d.get("timestamp")));
+    }
+
+    // rows not yet migrated still hold the ISO string
+    static Instant instantOf(Object v) {
+        if (v instanceof Date date) return date.toInstant();
+        if (v instanceof String s) {
+            try { return Instant.parse(s); } catch (RuntimeException e) { return null; }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,218 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+
+/**
+ * Write-behind buffer for the transactions audit log.
+ *
+ * Records are queued and a single flusher thread writes them with unordered insertMany. A
+ * record that finds nothing queued behind it is written at once; otherwise the batch fills
+ * until maxBatch records are waiting or lingerMillis after the first one arrived. A full
+ * queue blocks the caller (backpressure). In FLUSH_ON_ACK mode append() returns only once
+ * the record's batch has been written; FIRE_AND_FORGET returns as soon as it is queued.
+ * Either way a failed write is logged and counted in Stats.failed, not thrown: the borrow or
+ * return it records has already taken effect.
+ *
+ * One log exists per transactions collection (see {@link #of}); flushAll/shutdownAll are
+ * called by the UI and CLI so nothing is lost on exit.
+ */
+public final class TransactionLog {
+
+    public enum Durability { FLUSH_ON_ACK, FIRE_AND_FORGET }
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_MAX_BATCH = 500;
+    public static final long DEFAULT_LINGER_MILLIS = 5;
+
+    private static final Map<String, TransactionLog> LOGS = new ConcurrentHashMap<>();
+
+    private record Pending(Document doc, CompletableFuture<Void> ack) {}
+
+    public record Stats(int queueDepth, long appended, long written, long batches,
+                        long largestBatch, long failed, long blockedAppends) {
+        public double averageBatch() { return batches == 0 ? 0 : (double) written / batches; }
+    }
+
+    private final MongoCollection<Document> collection;
+    private final Durability durability;
+    private final int maxBatch;
+    private final long lingerMillis;
+    private final BlockingQueue<Pending> queue;
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong blockedAppends = new AtomicLong();
+
+    public TransactionLog(MongoCollection<Document> collection, Durability durability,
+                          int capacity, int maxBatch, long lingerMillis) {
+        this.collection = collection;
+        this.durability = durability;
+        this.maxBatch = maxBatch;
+        this.lingerMillis = lingerMillis;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.flusher = new Thread(this::run, "txlog-" + collection.getNamespace().getFullName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Shared log for the given collection. Durability defaults to FLUSH_ON_ACK and can be
+     * switched with -Dlibrary.txlog.durability=FIRE_AND_FORGET; an unknown value keeps the default.
+     */
+    public static TransactionLog of(MongoCollection<Document> collection) {
+        return LOGS.computeIfAbsent(collection.getNamespace().getFullName(), k ->
+                new TransactionLog(collection, durabilityFromProperty(), DEFAULT_CAPACITY, DEFAULT_MAX_BATCH, DEFAULT_LINGER_MILLIS));
+    }
+
+    private static Durability durabilityFromProperty() {
+        String mode = System.getProperty("library.txlog.durability", Durability.FLUSH_ON_ACK.name());
+        try {
+            return Durability.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("[txlog] unknown library.txlog.durability '" + mode + "', using " + Durability.FLUSH_ON_ACK);
+            return Durability.FLUSH_ON_ACK;
+        }
+    }
+
+    /** Block until everything queued so far in every log has been written. */
+    public static void flushAll() {
+        for (TransactionLog log : LOGS.values()) log.flush();
+    }
+
+    /** Drain and stop every log; later appends go through a fresh log. */
+    public static void shutdownAll() {
+        for (String key : List.copyOf(LOGS.keySet())) {
+            TransactionLog log = LOGS.remove(key);
+            if (log != null) log.close();
+        }
+    }
+
+    public static Map<String, Stats> statsAll() {
+        Map<String, Stats> out = new ConcurrentHashMap<>();
+        LOGS.forEach((k, v) -> out.put(k, v.stats()));
+        return out;
+    }
+
+    public void append(Document tx) {
+        if (closed) { write(List.of(new Pending(tx, null))); return; }
+        CompletableFuture<Void> ack = durability == Durability.FLUSH_ON_ACK ? new CompletableFuture<>() : null;
+        enqueue(new Pending(tx, ack));
+        appended.incrementAndGet();
+        if (closed) drainNow(); // lost the race with close(); nobody else will pick it up
+        if (ack != null) {
+            try {
+                ack.join();
+            } catch (CompletionException e) {
+                // write() has logged and counted it; the caller's update is already committed
+            }
+        }
+    }
+
+    public void flush() {
+        if (closed) return;
+        CompletableFuture<Void> marker = new CompletableFuture<>();
+        enqueue(new Pending(null, marker));
+        marker.join();
+    }
+
+    public void close() {
+        if (closed) return;
+        flush();
+        closed = true;
+        flusher.interrupt();
+        try { flusher.join(TimeUnit.SECONDS.toMillis(5)); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        // anything that raced in after the final flush is written synchronously
+        drainNow();
+    }
+
+    public Stats stats() {
+        return new Stats(queue.size(), appended.get(), written.get(), batches.get(),
+                largestBatch.get(), failed.get(), blockedAppends.get());
+    }
+
+    private synchronized void drainNow() {
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        write(rest);
+    }
+
+    private void enqueue(Pending p) {
+        if (queue.offer(p)) return;
+        blockedAppends.incrementAndGet();
+        try {
+            queue.put(p);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for transaction log space", e);
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // lingering only pays when others are already queuing; a lone record goes straight out
+                boolean busy = !queue.isEmpty();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                while (busy && batch.size() < maxBatch && first.doc() != null) {
+                    long wait = deadline - System.nanoTime();
+                    Pending next = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                    if (next.doc() == null) break; // flush marker
+                }
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                if (closed) break;
+            }
+        }
+        write(batch);
+    }
+
+    private void write(List<Pending> batch) {
+        if (batch.isEmpty()) return;
+        List<Document> docs = new ArrayList<>(batch.size());
+        for (Pending p : batch) if (p.doc() != null) docs.add(p.doc());
+        RuntimeException error = null;
+        if (!docs.isEmpty()) {
+            try {
+                collection.insertMany(docs, new InsertManyOptions().ordered(false));
+                written.addAndGet(docs.size());
+                batches.incrementAndGet();
+                largestBatch.accumulateAndGet(docs.size(), Math::max);
+            } catch (RuntimeException e) {
+                error = e;
+                failed.addAndGet(docs.size());
+                System.err.println("[txlog] batch of " + docs.size() + " failed: " + e.getMessage());
+            }
+        }
+        for (Pending p : batch) {
+            if (p.ack() == null) continue;
+            if (error != null && p.doc() != null) p.ack().completeExceptionally(error);
+            else p.ack().complete(null);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package service;
+
+import static com.mongodb.client.model.Filters.*;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * One-time conversion of the transactions audit log to BSON-date timestamps, and optionally
+ * into the time-series layout of {@link TransactionHistory}.
+ *
+ * String timestamps are rewritten in place, batchSize documents per unordered bulkWrite, in
+ * _id order; only strings are selected, so a rerun picks up where a crashed run stopped.
+ * Values that do not parse as ISO instants are left alone and counted as invalid.
+ *
+ * For the time-series layout the plain collection is renamed to transactions_plain, a
+ * time-series transactions collection is created and the old entries are copied over in
+ * _id order. The last copied _id is checkpointed in the migrations collection after every
+ * batch, so an interrupted copy resumes from the last completed batch (only a batch that was
+ * in flight at the crash can land twice). transactions_plain is kept for the operator to
+ * drop. Run it with the application stopped.
+ */
+public final class TransactionMigration {
+
+    public static final String PLAIN_COPY = TransactionHistory.COLLECTION + "_plain";
+    private static final String CHECKPOINT_ID = "transactions-timeseries";
+
+    public record Result(long converted, long invalid, long copied, TransactionHistory.Layout layout) {
+        @Override
+        public String toString() {
+            return String.format("%d timestamps converted, %d unparseable, %d entries copied; layout %s",
+                    converted, invalid, copied, layout);
+        }
+    }
+
+    private TransactionMigration() {}
+
+    public static Result run(MongoDatabase db, boolean toTimeSeries, int batchSize, Consumer<String> progress) {
+        TransactionHistory.Layout layout = TransactionHistory.detect(db);
+        boolean resuming = hasCollection(db, PLAIN_COPY);
+        long[] counts = new long[2];
+        if (layout != TransactionHistory.Layout.TIME_SERIES && !resuming) {
+            convertStrings(db.getCollection(TransactionHistory.COLLECTION), batchSize, counts, progress);
+        }
+        long copied = 0;
+        if (toTimeSeries && (layout != TransactionHistory.Layout.TIME_SERIES || resuming)) {
+            if (layout == TransactionHistory.Layout.PLAIN) {
+                db.getCollection(TransactionHistory.COLLECTION).renameCollection(new MongoNamespace(db.getName(), PLAIN_COPY));
+                layout = null;
+            }
+            if (layout == null) db.createCollection(TransactionHistory.COLLECTION, TransactionHistory.timeSeriesOptions());
+            copied = copyToTimeSeries(db, batchSize, counts, progress);
+        }
+        TransactionHistory.forget(db);
+        TransactionHistory history = TransactionHistory.of(db);
+        for (IndexManager.IndexSpec spec : history.indexSpecs()) {
+            db.getCollection(spec.collection()).createIndex(spec.keys(), spec.options());
+        }
+        return new Result(counts[0], counts[1], copied, history.layout());
+    }
+
+    private static void convertStrings(MongoCollection<Document> tx, int batchSize, long[] counts, Consumer<String> progress) {
+        Object lastId = null;
+        while (true) {
+            // unparseable values stay strings, so the _id cursor is what moves the scan forward
+            Bson filter = lastId == null ? type("timestamp", BsonType.STRING)
+                    : and(type("timestamp", BsonType.STRING), gt("_id", lastId));
+            List<WriteModel<Document>> batch = new ArrayList<>(batchSize);
+            int seen = 0;
+            for (Document d : tx.find(filter).projection(Projections.include("timestamp"))
+                    .sort(Sorts.ascending("_id")).limit(batchSize)) {
+                seen++;
+                lastId = d.get("_id");
+                Instant at = TransactionHistory.instantOf(d.get("timestamp"));
+                if (at == null) counts[1]++;
+                else batch.add(new UpdateOneModel<>(eq("_id", lastId), Updates.set("timestamp", Date.from(at))));
+            }
+            if (!batch.isEmpty()) {
+                counts[0] += tx.bulkWrite(batch, new BulkWriteOptions().ordered(false)).getModifiedCount();
+                progress.accept("converted " + counts[0]);
+            }
+            if (seen < batchSize) return;
+        }
+    }
+
+    private static long copyToTimeSeries(MongoDatabase db, int batchSize, long[] counts, Consumer<String> progress) {
+        MongoCollection<Document> source = db.getCollection(PLAIN_COPY);
+        MongoCollection<Document> target = db.getCollection(TransactionHistory.COLLECTION);
+        MongoCollection<Document> checkpoints = db.getCollection("migrations");
+        Document checkpoint = checkpoints.find(eq("_id", CHECKPOINT_ID)).first();
+        if (checkpoint != null && checkpoint.getBoolean("done", false)) return 0;
+        Object lastId = checkpoint == null ? null : checkpoint.get("lastId");
+        long copied = checkpoint == null ? 0 : checkpoint.get("copied", Number.class).longValue();
+        while (true) {
+            Bson filter = lastId == null ? new Document() : gt("_id", lastId);
+            List<Document> batch = new ArrayList<>(batchSize);
+            Object batchLast = null;
+            for (Document d : source.find(filter).sort(Sorts.ascending("_id")).limit(batchSize)) {
+                batchLast = d.get("_id");
+                Document entry = toTimeSeries(d);
+                if (entry == null) counts[1]++;
+                else batch.add(entry);
+            }
+            if (batchLast == null) break;
+            if (!batch.isEmpty()) target.insertMany(batch, new InsertManyOptions().ordered(false));
+            copied += batch.size();
+            lastId = batchLast;
+            checkpoints.replaceOne(eq("_id", CHECKPOINT_ID),
+                    new Document("_id", CHECKPOINT_ID).append("lastId", lastId).append("copied", copied),
+                    new ReplaceOptions().upsert(true));
+            progress.accept("copied " + copied);
+        }
+        checkpoints.updateOne(eq("_id", CHECKPOINT_ID), Updates.set("done", true));
+        return copied;
+    }
+
+    // plain entry -> time-series entry, or null when its timestamp is unusable
+    private static Document toTimeSeries(Document d) {
+        Instant at = TransactionHistory.instantOf(d.get("timestamp"));
+        if (at == null) return null;
+        Document out = new Document(d);
+        out.put("meta", new Document("username", out.remove("username")).append("isbn", out.remove("isbn")));
+        out.put("timestamp", Date.from(at));
+        return out;
+    }
+
+    private static boolean hasCollection(MongoDatabase db, String name) {
+        return db.listCollections().filter(eq("name", name)).first() != null;
+    }
+}
@@ -0,0 +1,136 @@
+package service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import model.User;
+
+/**
+ * Bounded read-through cache of users by username, shared per users collection.
+ *
+ * Entries expire after a TTL and the least recently used one is evicted once maxEntries is
+ * reached. Unknown usernames are cached too (with a shorter TTL) so repeated failed logins
+ * do not each reach the database. The full user list used by the admin dialog is cached
+ * as a single entry. LibraryManagementSystem invalidates on every user write; other
+ * processes' writes become visible when the TTL runs out.
+ */
+public final class UserCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60_000;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 30_000;
+
+    private static final Map<String, UserCache> CACHES = new ConcurrentHashMap<>();
+
+    public record Stats(long hits, long negativeHits, long misses, long evictions, long expirations, int size) {
+        public double hitRate() {
+            long total = hits + negativeHits + misses;
+            return total == 0 ? 0 : (double) (hits + negativeHits) / total;
+        }
+    }
+
+    private record Entry(User user, long expiresAt) {}
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private List<User> allUsers;
+    private long allUsersExpiresAt;
+
+    private long hits, negativeHits, misses, evictions, expirations;
+    // bumped on invalidation so a load that raced with a write is not cached
+    private long generation;
+
+    public UserCache(int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Shared cache for the users collection with the given full name (db.collection). */
+    public static UserCache forNamespace(String namespace) {
+        return CACHES.computeIfAbsent(namespace,
+                k -> new UserCache(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS));
+    }
+
+    public static Map<String, Stats> statsAll() {
+        Map<String, Stats> out = new LinkedHashMap<>();
+        CACHES.forEach((k, v) -> out.put(k, v.stats()));
+        return out;
+    }
+
+    /** Cached user (or cached absence, as null); calls loader on a miss. */
+    public User get(String username, Function<String, User> loader) {
+        long now = System.currentTimeMillis();
+        long gen;
+        synchronized (this) {
+            gen = generation;
+            Entry e = entries.get(username);
+            if (e != null && e.expiresAt() > now) {
+                if (e.user() == null) negativeHits++; else hits++;
+                return e.user();
+            }
+            if (e != null) { entries.remove(username); expirations++; }
+            misses++;
+        }
+        // load outside the lock so one slow query does not serialize every login
+        User u = loader.apply(username);
+        synchronized (this) {
+            if (gen == generation) {
+                entries.put(username, new Entry(u, now + (u == null ? negativeTtlMillis : ttlMillis)));
+                evictOverflow();
+            }
+        }
+        return u;
+    }
+
+    public List<User> all(Supplier<List<User>> loader) {
+        long now = System.currentTimeMillis();
+        long gen;
+        synchronized (this) {
+            gen = generation;
+            if (allUsers != null && allUsersExpiresAt > now) { hits++; return allUsers; }
+            misses++;
+        }
+        List<User> loaded = List.copyOf(loader.get());
+        synchronized (this) {
+            if (gen == generation) {
+                allUsers = loaded;
+                allUsersExpiresAt = now + ttlMillis;
+            }
+        }
+        return loaded;
+    }
+
+    public synchronized void invalidate(String username) {
+        generation++;
+        entries.remove(username);
+        allUsers = null;
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        allUsers = null;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, negativeHits, misses, evictions, expirations, entries.size());
+    }
+
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+}